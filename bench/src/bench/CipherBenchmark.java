@@ -0,0 +1,166 @@
+package bench;
+
+import Encryption.CipherEngine;
+import Encryption.GcmCipherEngine;
+
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * <p> CipherBenchmark </p>
+ *
+ * <p> Description: Decryption throughput of special access articles in MB/s for 1 KB, 64 KB and 1 MB
+ * articles. Compares the old approach, one shared JCE Cipher that is re-initialised on every call and
+ * has to be locked, with CipherEngine on one thread and on every core. </p>
+ *
+ * <p> A second table compares the payload formats on one thread, encrypting and decrypting: version 1,
+ * AES/CBC through BouncyCastle, against version 2, AES/GCM through SunJCE, which runs on the AES-NI
+ * and CLMUL instructions. GCM through BouncyCastle is there too, to tell the mode from the provider.
+ * Takes the seconds per run as its only argument. See bench/README.md. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class CipherBenchmark {
+
+    private static final int[] SIZES = {1024, 64 * 1024, 1024 * 1024};
+
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Security.addProvider(new BouncyCastleProvider());
+
+        SecureRandom random = new SecureRandom();
+        // Throughput does not depend on the key, only on its length, 192 bits like EncryptionHelper's
+        byte[] keyBytes = new byte[24];
+        random.nextBytes(keyBytes);
+        SecretKeySpec key = new SecretKeySpec(keyBytes, "AES");
+        Cipher shared = Cipher.getInstance("AES/CBC/PKCS5Padding", "BC");
+        CipherEngine engine = new CipherEngine(keyBytes);
+
+        System.out.printf("%-10s %22s %22s %22s%n", "size", "shared Cipher (MB/s)", "engine 1 thread", "engine " + threads + " threads");
+        for (int size : SIZES) {
+            byte[] plain = new byte[size];
+            byte[] iv = new byte[16];
+            random.nextBytes(plain);
+            random.nextBytes(iv);
+            byte[] encrypted = engine.encrypt(plain, iv);
+
+            Callable<byte[]> sharedCall = () -> {
+                synchronized (shared) {
+                    shared.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+                    return shared.doFinal(encrypted);
+                }
+            };
+            Callable<byte[]> engineCall = () -> engine.decrypt(encrypted, iv);
+
+            // Warm up so the JIT has compiled both paths before anything is measured
+            run(sharedCall, 1, size, seconds / 2);
+            run(engineCall, threads, size, seconds / 2);
+
+            System.out.printf("%-10s %22.1f %22.1f %22.1f%n", label(size),
+                    run(sharedCall, threads, size, seconds),
+                    run(engineCall, 1, size, seconds),
+                    run(engineCall, threads, size, seconds));
+        }
+
+        GcmCipherEngine gcmSun = new GcmCipherEngine(keyBytes, "SunJCE");
+        GcmCipherEngine gcmBc = new GcmCipherEngine(keyBytes, "BC");
+        // SunJCE only runs GCM on AES-NI and CLMUL once C2 has compiled its loops, and messages over
+        // 64 KB take a loop of their own that is too slow interpreted to ever be called often enough
+        // at 1 MB. Thousands of 256 KB messages get both compiled before anything is measured.
+        byte[] warmUp = new byte[256 * 1024];
+        byte[] warmUpNonce = gcmSun.newNonce();
+        byte[] warmUpCipherText = gcmSun.encrypt(warmUp, warmUpNonce);
+        run(() -> {
+            gcmSun.encrypt(warmUp, gcmSun.newNonce());
+            return gcmSun.decrypt(warmUpCipherText, warmUpNonce);
+        }, 1, warmUp.length, seconds * 2);
+
+        System.out.println();
+        System.out.printf("%-10s %22s %22s %22s%n", "size", "CBC BC (MB/s)", "GCM BC", "GCM SunJCE");
+        for (int size : SIZES) {
+            byte[] plain = new byte[size];
+            random.nextBytes(plain);
+            byte[] iv = new byte[16];
+            random.nextBytes(iv);
+            byte[] cbc = engine.encrypt(plain, iv);
+            byte[] sunNonce = gcmSun.newNonce();
+            byte[] sun = gcmSun.encrypt(plain, sunNonce);
+            byte[] bcNonce = gcmBc.newNonce();
+            byte[] bc = gcmBc.encrypt(plain, bcNonce);
+
+            // What one stored article costs: encrypted once when written, decrypted when read
+            Callable<byte[]> cbcCall = () -> {
+                engine.encrypt(plain, iv);
+                return engine.decrypt(cbc, iv);
+            };
+            Callable<byte[]> bcCall = () -> {
+                gcmBc.encrypt(plain, gcmBc.newNonce());
+                return gcmBc.decrypt(bc, bcNonce);
+            };
+            Callable<byte[]> sunCall = () -> {
+                gcmSun.encrypt(plain, gcmSun.newNonce());
+                return gcmSun.decrypt(sun, sunNonce);
+            };
+
+            run(cbcCall, 1, size, seconds / 2);
+            run(bcCall, 1, size, seconds / 2);
+            run(sunCall, 1, size, seconds / 2);
+
+            System.out.printf("%-10s %22.1f %22.1f %22.1f%n", label(size),
+                    run(cbcCall, 1, size, seconds),
+                    run(bcCall, 1, size, seconds),
+                    run(sunCall, 1, size, seconds));
+        }
+    }
+
+    /* Call the operation from the given number of threads for the given time and return MB/s */
+    private static double run(Callable<byte[]> operation, int threads, int size, double seconds) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long end = System.nanoTime() + (long) (seconds * 1_000_000_000L);
+            List<Future<Long>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    long calls = 0;
+                    while (System.nanoTime() < end) {
+                        if (operation.call().length != size) {
+                            throw new IllegalStateException("Decryption returned the wrong length");
+                        }
+                        calls++;
+                    }
+                    return calls;
+                }));
+            }
+            long calls = 0;
+            for (Future<Long> result : results) {
+                calls += result.get();
+            }
+            double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+            return calls * (double) size / (1024 * 1024) / elapsed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String label(int size) {
+        return size >= 1024 * 1024 ? size / (1024 * 1024) + " MB" : size / 1024 + " KB";
+    }
+}
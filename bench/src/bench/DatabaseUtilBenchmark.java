@@ -0,0 +1,186 @@
+package bench;
+
+import application.DatabaseUtil;
+import application.helpItem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p> DatabaseUtilBenchmark </p>
+ *
+ * <p> Description: JMH benchmarks of the DatabaseUtil calls the application makes most. Every trial
+ * runs against a fresh H2 database in a temporary directory, filled with the given number of help
+ * items, users and group permissions, so the results do not depend on the developer's own data.
+ * See bench/README.md for how to build and run them. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseUtilBenchmark {
+    private static final String PASSWORD = "password";
+    private static final int GROUPS = 100;
+    private static final int ARTICLES = 100;
+    private static final int ARTICLE_SIZE = 4096;
+
+    // Number of help items, users and group permissions in the database
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private Path directory;
+    private String jdbcUrl;
+    private DatabaseUtil db;
+    private int[] groupIds;
+    private int articleGroupId;
+    private Path backupFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("helpsystem-bench");
+        jdbcUrl = "jdbc:h2:" + directory.resolve("bench").toAbsolutePath();
+        backupFile = directory.resolve("backup.csv");
+        db = new DatabaseUtil(jdbcUrl);
+        db.connectToDatabase();
+
+        List<helpItem> items = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            items.add(new helpItem(0, "Help item " + i, "Description of help item " + i, "Short description " + i,
+                    "Author " + (i % 50), "keyword" + (i % 200), "Reference " + i, "Beginner", "Group " + (i % GROUPS)));
+        }
+        db.addHelpItems(items);
+
+        groupIds = new int[GROUPS];
+        for (int g = 0; g < GROUPS; g++) {
+            db.createSpecialAccessGroup("Group " + g, "instructor");
+        }
+        List<Map<String, Object>> groups = db.getAllSpecialAccessGroups();
+        for (int g = 0; g < GROUPS; g++) {
+            groupIds[g] = (int) groups.get(g).get("group_id");
+        }
+        articleGroupId = groupIds[0];
+        String article = "Special access article text. ".repeat(ARTICLE_SIZE / 29 + 1).substring(0, ARTICLE_SIZE);
+        for (int a = 0; a < ARTICLES; a++) {
+            db.addArticleToGroup(articleGroupId, a, article);
+        }
+
+        // Users and their permissions go in with plain JDBC batches, row by row setup would dominate the trial.
+        // Hashing the password once and storing it for every user keeps login measuring a real hash check.
+        String passwordHash = db.getPasswordHasher().hash(PASSWORD);
+        try (Connection conn = DriverManager.getConnection(jdbcUrl, "sa", "");
+             PreparedStatement users = conn.prepareStatement("INSERT INTO helpsystem_users (username, password, roles) VALUES (?, ?, ?)");
+             PreparedStatement permissions = conn.prepareStatement("INSERT INTO group_permissions (group_id, username, permission_type) VALUES (?, ?, 'VIEW')")) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < rows; i++) {
+                users.setString(1, "user" + i);
+                users.setString(2, passwordHash);
+                users.setString(3, "student");
+                users.addBatch();
+                permissions.setInt(1, groupIds[i % GROUPS]);
+                permissions.setString(2, "user" + i);
+                permissions.addBatch();
+                if (i % 1000 == 999) {
+                    users.executeBatch();
+                    permissions.executeBatch();
+                }
+            }
+            users.executeBatch();
+            permissions.executeBatch();
+            conn.commit();
+        }
+    }
+
+    /* Drop the help items addHelpItem added, so every iteration starts from the same table size */
+    @TearDown(Level.Iteration)
+    public void removeAddedHelpItems() throws Exception {
+        try (Connection conn = DriverManager.getConnection(jdbcUrl, "sa", "");
+             PreparedStatement pstmt = conn.prepareStatement("DELETE FROM helpsystem_helpitems WHERE title = 'Benchmark item'")) {
+            pstmt.executeUpdate();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        db.closeConnection();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private int randomRow() {
+        return ThreadLocalRandom.current().nextInt(rows);
+    }
+
+    @Benchmark
+    public boolean login() throws Exception {
+        return db.login("user" + randomRow(), PASSWORD);
+    }
+
+    @Benchmark
+    public helpItem getHelpItem() {
+        return db.getHelpItem("Help item " + randomRow());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<helpItem> getAllHelpItems() throws Exception {
+        return db.getAllHelpItems();
+    }
+
+    @Benchmark
+    public boolean hasViewPermission() throws Exception {
+        int row = randomRow();
+        return db.hasViewPermission(groupIds[row % GROUPS], "user" + row);
+    }
+
+    @Benchmark
+    public void addHelpItem() throws Exception {
+        db.addHelpItem("Benchmark item", "Description", "Short description", "Author", "keyword", "Reference", "Beginner", "Group");
+    }
+
+    @Benchmark
+    public String getGroupArticleContent() throws Exception {
+        return db.getGroupArticleContent(articleGroupId, ThreadLocalRandom.current().nextInt(ARTICLES), "instructor");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object backupHelpItemsToFile() throws Exception {
+        return db.backupHelpItemsToFile(backupFile.toString(), false);
+    }
+}
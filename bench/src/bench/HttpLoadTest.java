@@ -0,0 +1,170 @@
+package bench;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> HttpLoadTest </p>
+ *
+ * <p> Description: Load test for the HelpSystemServer API. A number of client threads send requests
+ * back to back for a while, each to a path picked at random from the ones given, and the latency of
+ * every request after the warm up is recorded. At the end it prints the throughput and the p50, p90,
+ * p99 and p99.9 latencies, so runs before and after a change can be compared. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class HttpLoadTest {
+
+    /* Latencies one client recorded, in nanoseconds */
+    private static final class Recorder {
+        private long[] latencies = new long[1 << 16];
+        private int count = 0;
+
+        void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080";
+        int clients = 32;
+        int seconds = 30;
+        int warmupSeconds = 5;
+        String login = null;
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--url=")) {
+                url = arg.substring("--url=".length());
+            } else if (arg.startsWith("--clients=")) {
+                clients = Integer.parseInt(arg.substring("--clients=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Integer.parseInt(arg.substring("--seconds=".length()));
+            } else if (arg.startsWith("--warmup=")) {
+                warmupSeconds = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--login=")) {
+                login = arg.substring("--login=".length());
+            } else if (arg.startsWith("--path=")) {
+                paths.add(arg.substring("--path=".length()));
+            } else {
+                System.out.println("Unknown option " + arg);
+                return;
+            }
+        }
+        if (paths.isEmpty()) {
+            paths.add("/api/search?q=help");
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        String token = login == null ? null : login(client, url, login);
+
+        List<HttpRequest> requests = new ArrayList<>();
+        for (String path : paths) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url + path)).timeout(Duration.ofSeconds(30)).GET();
+            if (token != null) {
+                builder.header("Authorization", "Bearer " + token);
+            }
+            requests.add(builder.build());
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + Duration.ofSeconds(warmupSeconds).toNanos();
+        long end = measureFrom + Duration.ofSeconds(seconds).toNanos();
+        AtomicLong errors = new AtomicLong();
+        Recorder[] recorders = new Recorder[clients];
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            Recorder recorder = recorders[i] = new Recorder();
+            threads[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (true) {
+                    HttpRequest request = requests.get(random.nextInt(requests.size()));
+                    long sent = System.nanoTime();
+                    if (sent >= end) {
+                        return;
+                    }
+                    boolean ok;
+                    try {
+                        ok = client.send(request, HttpResponse.BodyHandlers.ofByteArray()).statusCode() == 200;
+                    } catch (Exception e) {
+                        ok = false;
+                    }
+                    if (sent >= measureFrom) {
+                        if (ok) {
+                            recorder.record(System.nanoTime() - sent);
+                        } else {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            }, "load-client-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = 0;
+        for (Recorder recorder : recorders) {
+            total += recorder.count;
+        }
+        long[] latencies = new long[total];
+        int at = 0;
+        for (Recorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, latencies, at, recorder.count);
+            at += recorder.count;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("%d clients, %d s after %d s warm up, %s%n", clients, seconds, warmupSeconds, paths);
+        System.out.printf("requests: %d ok, %d failed, %.1f req/s%n", total, errors.get(), total / (double) seconds);
+        if (total > 0) {
+            System.out.printf("latency ms: p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                    percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                    percentile(latencies, 0.999), latencies[total - 1] / 1e6);
+        }
+    }
+
+    /* The latency, in milliseconds, that a fraction of the sorted latencies are at or below */
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    /* Log in once with user:password and return the bearer token */
+    private static String login(HttpClient client, String url, String login) throws Exception {
+        int colon = login.indexOf(':');
+        String form = "username=" + URLEncoder.encode(login.substring(0, colon), StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(login.substring(colon + 1), StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/api/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login failed: " + response.body());
+        }
+        String body = response.body();
+        int from = body.indexOf("\"token\":\"") + "\"token\":\"".length();
+        return body.substring(from, body.indexOf('"', from));
+    }
+}
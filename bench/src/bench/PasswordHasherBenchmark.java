@@ -0,0 +1,68 @@
+package bench;
+
+import application.PasswordHasher;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p> PasswordHasherBenchmark </p>
+ *
+ * <p> Description: JMH benchmark of checking a password at each PBKDF2 cost setting, on one thread,
+ * so the score is logins per second per core. Divide the expected logins per second at peak by it to
+ * get the number of cores the hasher pool needs for a given setting. See bench/README.md. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(1)
+public class PasswordHasherBenchmark {
+    private static final String PASSWORD = "password";
+
+    // PBKDF2 iterations
+    @Param({"100000", "310000", "600000"})
+    public int iterations;
+
+    private PasswordHasher hasher;
+    private String stored;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        hasher = new PasswordHasher(iterations, 1, PasswordHasher.DEFAULT_QUEUE_CAPACITY);
+        stored = hasher.hash(PASSWORD);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println(hasher.getStats());
+        hasher.close();
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return hasher.verify(PASSWORD, stored);
+    }
+}
@@ -0,0 +1,144 @@
+package bench;
+
+import application.HelpItemSearchIndex;
+import application.helpItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p> SearchIndexBenchmark </p>
+ *
+ * <p> Description: JMH benchmarks of ranking help items with HelpItemSearchIndex.rank and with the
+ * typo tolerant HelpItemSearchIndex.fuzzy, the top 20 hits for a query, in microseconds per query.
+ * The index is filled with synthetic help items whose words follow a Zipf distribution over a fixed
+ * vocabulary, so a few words are in most items and most words are in a few, as in real text. No
+ * database is needed. See bench/README.md. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchIndexBenchmark {
+    private static final int VOCABULARY = 20_000;
+    private static final int DESCRIPTION_WORDS = 80;
+    private static final int LIMIT = 20;
+
+    // Number of help items in the index
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private HelpItemSearchIndex index;
+    private String[] words;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        words = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            words[i] = word(i);
+        }
+        Random random = new Random(42);
+        double[] cumulative = zipf(VOCABULARY);
+        List<helpItem> items = new ArrayList<>(rows);
+        for (int id = 1; id <= rows; id++) {
+            items.add(new helpItem(id,
+                    "Article " + id + " " + text(random, cumulative, 4),
+                    text(random, cumulative, DESCRIPTION_WORDS),
+                    text(random, cumulative, 12),
+                    "author" + (id % 50),
+                    text(random, cumulative, 3),
+                    "",
+                    "Beginner",
+                    "Default Group"));
+        }
+        index = new HelpItemSearchIndex();
+        index.rebuild(items);
+    }
+
+    /* The most common word, in most help items */
+    @Benchmark
+    public HelpItemSearchIndex.Ranking commonTerm() {
+        return index.rank(words[0], LIMIT);
+    }
+
+    /* A word from the middle of the distribution */
+    @Benchmark
+    public HelpItemSearchIndex.Ranking rareTerm() {
+        return index.rank(words[2000], LIMIT);
+    }
+
+    /* A typical query: a few words of mixed frequency, the last one still being typed */
+    @Benchmark
+    public HelpItemSearchIndex.Ranking threeTermsAndPrefix() {
+        String last = words[150];
+        return index.rank(words[5] + " " + words[40] + " " + last.substring(0, last.length() - 1), LIMIT);
+    }
+
+    /* A misspelled word, one letter missing, for the fuzzy search the application falls back to */
+    @Benchmark
+    public HelpItemSearchIndex.Ranking misspelledTerm() {
+        String word = words[3000];
+        return index.fuzzy(word.substring(0, 2) + word.substring(3), LIMIT);
+    }
+
+    /* A pronounceable word that is unique for every rank */
+    private static String word(int rank) {
+        String consonants = "bcdfghklmnprstvz";
+        String vowels = "aeiou";
+        StringBuilder word = new StringBuilder();
+        int n = rank;
+        do {
+            word.append(consonants.charAt(n % consonants.length()));
+            n /= consonants.length();
+            word.append(vowels.charAt(n % vowels.length()));
+            n /= vowels.length();
+        } while (n > 0);
+        return word.append('n').toString();
+    }
+
+    private static double[] zipf(int size) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private String text(Random random, double[] cumulative, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            int at = Arrays.binarySearch(cumulative, random.nextDouble());
+            text.append(i == 0 ? "" : " ").append(words[Math.min(at < 0 ? -at - 1 : at, VOCABULARY - 1)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package Encryption;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.paddings.PKCS7Padding;
+import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/*
+ * AES/CBC/PKCS7 encryption that is safe to use from many threads at once. Every thread gets its own
+ * encrypting and decrypting cipher, initialised with the key the first time the thread uses them.
+ * After that only the IV is changed, so the AES key schedule is not computed again for every call.
+ * The output is the same as the JCE "AES/CBC/PKCS5Padding" cipher.
+ */
+public class CipherEngine {
+
+    private static final int IV_SIZE = 16;
+    private static final int STREAM_CHUNK_SIZE = 8192;
+
+    private final KeyParameter key;
+    private final ThreadLocal<Ciphers> ciphers;
+
+    /* The two ciphers belonging to one thread */
+    private static class Ciphers {
+        final PaddedBufferedBlockCipher encryptor = newCipher();
+        final PaddedBufferedBlockCipher decryptor = newCipher();
+        final byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+
+        Ciphers(KeyParameter key) {
+            encryptor.init(true, new ParametersWithIV(key, new byte[IV_SIZE]));
+            decryptor.init(false, new ParametersWithIV(key, new byte[IV_SIZE]));
+        }
+
+        private static PaddedBufferedBlockCipher newCipher() {
+            return new PaddedBufferedBlockCipher(CBCBlockCipher.newInstance(AESEngine.newInstance()), new PKCS7Padding());
+        }
+    }
+
+    public CipherEngine(byte[] keyBytes) {
+        key = new KeyParameter(keyBytes.clone());
+        ciphers = ThreadLocal.withInitial(() -> new Ciphers(key));
+    }
+
+    public byte[] encrypt(byte[] plainText, byte[] initializationVector) throws InvalidCipherTextException {
+        return process(ciphers.get().encryptor, true, plainText, initializationVector);
+    }
+
+    public byte[] decrypt(byte[] cipherText, byte[] initializationVector) throws InvalidCipherTextException {
+        return process(ciphers.get().decryptor, false, cipherText, initializationVector);
+    }
+
+    /* Decrypt length bytes of ciphertext read from the stream, without copying them into an array first */
+    public byte[] decrypt(InputStream cipherText, int length, byte[] initializationVector)
+            throws IOException, InvalidCipherTextException {
+        if (initializationVector.length != IV_SIZE) {
+            throw new IllegalArgumentException("IV must be " + IV_SIZE + " bytes");
+        }
+        Ciphers own = ciphers.get();
+        PaddedBufferedBlockCipher cipher = own.decryptor;
+        cipher.init(false, new ParametersWithIV(null, initializationVector));
+        byte[] output = new byte[cipher.getOutputSize(length)];
+        int written = 0;
+        int remaining = length;
+        while (remaining > 0) {
+            int read = cipherText.read(own.chunk, 0, Math.min(own.chunk.length, remaining));
+            if (read < 0) {
+                throw new EOFException("Ciphertext ended " + remaining + " bytes early");
+            }
+            written += cipher.processBytes(own.chunk, 0, read, output, written);
+            remaining -= read;
+        }
+        written += cipher.doFinal(output, written);
+        return written == output.length ? output : Arrays.copyOf(output, written);
+    }
+
+    private static byte[] process(PaddedBufferedBlockCipher cipher, boolean encrypting, byte[] input, byte[] initializationVector)
+            throws InvalidCipherTextException {
+        if (initializationVector.length != IV_SIZE) {
+            throw new IllegalArgumentException("IV must be " + IV_SIZE + " bytes");
+        }
+        // A null key keeps the key schedule from the first init and only resets the IV
+        cipher.init(encrypting, new ParametersWithIV(null, initializationVector));
+        byte[] output = new byte[cipher.getOutputSize(input.length)];
+        int length = cipher.processBytes(input, 0, input.length, output, 0);
+        length += cipher.doFinal(output, length);
+        return length == output.length ? output : Arrays.copyOf(output, length);
+    }
+}
@@ -0,0 +1,112 @@
+package Encryption;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/*
+ * Binary layout of an encrypted group article as stored in group_articles.payload:
+ *
+ *   version (1 byte) | IV length (1 byte) | IV | ciphertext length (4 bytes, big endian) | ciphertext
+ *
+ * The header is small and fixed, so a reader can take it off a stream and hand the rest of the
+ * stream straight to the cipher. The version says how the ciphertext was made:
+ *
+ *   1  AES/CBC/PKCS7 under the master key, with a 16 byte IV derived from the text itself
+ *   2  AES/GCM under the master key, with a random 12 byte nonce and the 16 byte tag at the end
+ *   3  AES/GCM as in 2, under a data key of the article's group; the version of that key follows
+ *      the version byte, before the IV length:
+ *
+ *      3 (1 byte) | key version (4 bytes, big endian) | IV length (1 byte) | IV | ...
+ *
+ * Articles are only written as version 3 now, 1 and 2 are read until re-encrypted.
+ */
+public class EncryptedPayload {
+
+    public static final int VERSION = 1;
+    public static final int VERSION_GCM = 2;
+    public static final int VERSION_GROUP_KEY = 3;
+
+    private final int version;
+    private final int keyVersion;
+    private final byte[] initializationVector;
+    private final int cipherTextLength;
+
+    private EncryptedPayload(int version, int keyVersion, byte[] initializationVector, int cipherTextLength) {
+        this.version = version;
+        this.keyVersion = keyVersion;
+        this.initializationVector = initializationVector;
+        this.cipherTextLength = cipherTextLength;
+    }
+
+    /* Build the stored form of a CBC IV and its ciphertext */
+    public static byte[] encode(byte[] initializationVector, byte[] cipherText) {
+        return encode(VERSION, initializationVector, cipherText);
+    }
+
+    /* Build the stored form of an IV or nonce and its ciphertext, for the given format version */
+    public static byte[] encode(int version, byte[] initializationVector, byte[] cipherText) {
+        if (version != VERSION && version != VERSION_GCM) {
+            throw new IllegalArgumentException("Unknown payload version " + version);
+        }
+        return encode(version, 0, initializationVector, cipherText);
+    }
+
+    /* Build the stored form of a nonce and its ciphertext under version keyVersion of a group's data key */
+    public static byte[] encodeGroupKey(int keyVersion, byte[] nonce, byte[] cipherText) {
+        return encode(VERSION_GROUP_KEY, keyVersion, nonce, cipherText);
+    }
+
+    private static byte[] encode(int version, int keyVersion, byte[] initializationVector, byte[] cipherText) {
+        if (initializationVector.length > 255) {
+            throw new IllegalArgumentException("IV is too long");
+        }
+        int keyVersionLength = version == VERSION_GROUP_KEY ? 4 : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(2 + keyVersionLength + initializationVector.length + 4 + cipherText.length)
+                .put((byte) version);
+        if (keyVersionLength > 0) {
+            buffer.putInt(keyVersion);
+        }
+        return buffer
+                .put((byte) initializationVector.length)
+                .put(initializationVector)
+                .putInt(cipherText.length)
+                .put(cipherText)
+                .array();
+    }
+
+    /* Read the header, leaving the stream positioned at the first byte of the ciphertext */
+    public static EncryptedPayload readHeader(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int version = data.readUnsignedByte();
+        if (version != VERSION && version != VERSION_GCM && version != VERSION_GROUP_KEY) {
+            throw new IOException("Unsupported payload version " + version);
+        }
+        int keyVersion = version == VERSION_GROUP_KEY ? data.readInt() : 0;
+        byte[] initializationVector = new byte[data.readUnsignedByte()];
+        data.readFully(initializationVector);
+        int cipherTextLength = data.readInt();
+        if (cipherTextLength < 0) {
+            throw new IOException("Corrupt payload length " + cipherTextLength);
+        }
+        return new EncryptedPayload(version, keyVersion, initializationVector, cipherTextLength);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /* The version of the group's data key for a version 3 payload, 0 for the others */
+    public int getKeyVersion() {
+        return keyVersion;
+    }
+
+    public byte[] getInitializationVector() {
+        return initializationVector;
+    }
+
+    public int getCipherTextLength() {
+        return cipherTextLength;
+    }
+}
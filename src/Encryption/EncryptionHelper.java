@@ -1,38 +1,74 @@
 package Encryption;
 
-import java.security.Security;
-
-import javax.crypto.Cipher;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 public class EncryptionHelper {
 
-    private final Cipher cipher;
+    // Keeps a ready cipher per thread, so encrypt and decrypt can be called concurrently
+    private final CipherEngine engine;
+    // AES/GCM for everything written now; CBC above is kept to read what was written before
+    private final GcmCipherEngine gcmEngine;
 
     byte[] keyBytes = new byte[] {
             0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07,
             0x08, 0x09, 0x0a, 0x0b, 0x0c, 0x0d, 0x0e, 0x0f,
             0x10, 0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17 };
-    private final SecretKey key = new SecretKeySpec(keyBytes, "AES");
 
     public EncryptionHelper() throws Exception {
-        Security.addProvider(new BouncyCastleProvider());
-        String BOUNCY_CASTLE_PROVIDER_IDENTIFIER = "BC";
-        cipher = Cipher.getInstance("AES/CBC/PKCS5Padding", BOUNCY_CASTLE_PROVIDER_IDENTIFIER);
+        // CipherEngine uses BouncyCastle's classes directly, only a GCM fallback needs it registered
+        engine = new CipherEngine(keyBytes);
+        gcmEngine = new GcmCipherEngine(keyBytes);
     }
 
     public byte[] encrypt(byte[] plainText, byte[] initializationVector) throws Exception {
-        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(initializationVector));
-        return cipher.doFinal(plainText);
+        return engine.encrypt(plainText, initializationVector);
     }
 
     public byte[] decrypt(byte[] cipherText, byte[] initializationVector) throws Exception {
-        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(initializationVector));
-        return cipher.doFinal(cipherText);
+        return engine.decrypt(cipherText, initializationVector);
+    }
+
+    public byte[] decrypt(InputStream cipherText, int length, byte[] initializationVector) throws Exception {
+        return engine.decrypt(cipherText, length, initializationVector);
+    }
+
+    /* A fresh nonce for encryptGcm, never reuse one */
+    public byte[] newNonce() {
+        return gcmEngine.newNonce();
+    }
+
+    public byte[] encryptGcm(byte[] plainText, byte[] nonce) throws Exception {
+        return gcmEngine.encrypt(plainText, nonce);
+    }
+
+    public byte[] decryptGcm(byte[] cipherText, byte[] nonce) throws Exception {
+        return gcmEngine.decrypt(cipherText, nonce);
+    }
+
+    public byte[] decryptGcm(InputStream cipherText, int length, byte[] nonce) throws Exception {
+        return gcmEngine.decrypt(cipherText, length, nonce);
+    }
+
+    /* Encrypt a group's data key under the master key; stored in the version 2 payload form */
+    public byte[] wrapKey(byte[] dataKey) throws Exception {
+        byte[] nonce = newNonce();
+        return EncryptedPayload.encode(EncryptedPayload.VERSION_GCM, nonce, encryptGcm(dataKey, nonce));
+    }
+
+    public byte[] unwrapKey(byte[] wrappedKey) throws Exception {
+        InputStream in = new ByteArrayInputStream(wrappedKey);
+        EncryptedPayload header = EncryptedPayload.readHeader(in);
+        if (header.getVersion() != EncryptedPayload.VERSION_GCM) {
+            throw new IOException("Wrapped key has payload version " + header.getVersion());
+        }
+        return decryptGcm(in, header.getCipherTextLength(), header.getInitializationVector());
+    }
+
+    /* SunJCE normally, BC where the JDK has no AES/GCM */
+    public String getGcmProvider() {
+        return gcmEngine.getProvider();
     }
 
 }
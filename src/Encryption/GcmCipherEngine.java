@@ -0,0 +1,125 @@
+package Encryption;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.security.Security;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/*
+ * AES/GCM encryption with a random 96 bit nonce per message and a 128 bit authentication tag, safe
+ * to use from many threads at once. GCM encrypts counter blocks independently and authenticates with
+ * a carry-less multiply, both of which the JDK's SunJCE provider runs on the AES-NI and CLMUL
+ * instructions, so SunJCE is used when it is there and BouncyCastle only as a fallback. Every thread
+ * keeps its own Cipher; SunJCE only expands the AES key again when the key changes, so after the
+ * first call per thread an init costs no more than setting the nonce.
+ *
+ * A nonce must never be used twice with the same key, which is why callers get one from newNonce
+ * rather than choosing it. Decrypting checks the tag and throws AEADBadTagException if the ciphertext
+ * or nonce was changed in any way.
+ */
+public class GcmCipherEngine {
+
+    public static final int NONCE_SIZE = 12;
+    public static final int TAG_BITS = 128;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String[] PROVIDERS = {"SunJCE", "BC"};
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKeySpec key;
+    private final String provider;
+    private final ThreadLocal<Cipher> ciphers;
+
+    /* Use the first provider that has AES/GCM: SunJCE, else BouncyCastle */
+    public GcmCipherEngine(byte[] keyBytes) throws GeneralSecurityException {
+        this(keyBytes, selectProvider());
+    }
+
+    /* Use the given provider, for comparing providers */
+    public GcmCipherEngine(byte[] keyBytes, String provider) throws GeneralSecurityException {
+        registerIfBouncyCastle(provider);
+        // Fail here rather than on the first call if the provider cannot do it
+        Cipher.getInstance(TRANSFORMATION, provider);
+        this.key = new SecretKeySpec(keyBytes.clone(), "AES");
+        this.provider = provider;
+        this.ciphers = ThreadLocal.withInitial(() -> {
+            try {
+                return Cipher.getInstance(TRANSFORMATION, provider);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(TRANSFORMATION + " from " + provider + " is not available", e);
+            }
+        });
+    }
+
+    private static String selectProvider() throws GeneralSecurityException {
+        for (String name : PROVIDERS) {
+            try {
+                registerIfBouncyCastle(name);
+                Cipher.getInstance(TRANSFORMATION, name);
+                return name;
+            } catch (NoSuchAlgorithmException | NoSuchProviderException | NoSuchPaddingException e) {
+                // Try the next one
+            }
+        }
+        throw new NoSuchAlgorithmException("No provider for " + TRANSFORMATION);
+    }
+
+    /* BouncyCastle is slow to load, so it is only registered once something asks for it */
+    private static synchronized void registerIfBouncyCastle(String provider) {
+        if ("BC".equals(provider) && Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    /* The name of the provider doing the work */
+    public String getProvider() {
+        return provider;
+    }
+
+    /* A new random nonce for one message */
+    public byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_SIZE];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    /* The ciphertext with the tag appended */
+    public byte[] encrypt(byte[] plainText, byte[] nonce) throws GeneralSecurityException {
+        return cipher(Cipher.ENCRYPT_MODE, nonce).doFinal(plainText);
+    }
+
+    public byte[] decrypt(byte[] cipherText, byte[] nonce) throws GeneralSecurityException {
+        return cipher(Cipher.DECRYPT_MODE, nonce).doFinal(cipherText);
+    }
+
+    /*
+     * Decrypt length bytes of ciphertext read from the stream. Nothing may be returned before the tag
+     * at the end has been checked, so unlike CBC the whole message is read before any of it is used.
+     */
+    public byte[] decrypt(InputStream cipherText, int length, byte[] nonce) throws IOException, GeneralSecurityException {
+        byte[] bytes = cipherText.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException("Ciphertext ended " + (length - bytes.length) + " bytes early");
+        }
+        return decrypt(bytes, nonce);
+    }
+
+    private Cipher cipher(int mode, byte[] nonce) throws GeneralSecurityException {
+        if (nonce.length != NONCE_SIZE) {
+            throw new IllegalArgumentException("Nonce must be " + NONCE_SIZE + " bytes");
+        }
+        Cipher cipher = ciphers.get();
+        cipher.init(mode, key, new GCMParameterSpec(TAG_BITS, nonce));
+        return cipher;
+    }
+}
@@ -0,0 +1,147 @@
+package application;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p> ArticleCache </p>
+ *
+ * <p> Description: Cache of decrypted special access articles keyed by group and article id. The
+ * cache is bounded by the memory its strings take rather than by entry count, and evicts the least
+ * recently read articles first. It knows nothing about permissions; callers check those on every
+ * read and only use the cache to skip the query and the decrypt. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class ArticleCache {
+    // Rough per entry cost of the map entry, the key and the String object besides its characters
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long capacityBytes;
+    private long sizeBytes = 0;
+    // Bumped on every invalidation, so a load that raced with one is not cached
+    private long generation = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    // Access ordered, so the eldest entry is the least recently read article
+    private final LinkedHashMap<Long, String> articles = new LinkedHashMap<>(64, 0.75f, true);
+
+    /* Snapshot of the cache metrics */
+    public static class Stats {
+        public final int entries;
+        public final long sizeBytes;
+        public final long capacityBytes;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+
+        Stats(int entries, long sizeBytes, long capacityBytes, long hits, long misses, long evictions) {
+            this.entries = entries;
+            this.sizeBytes = sizeBytes;
+            this.capacityBytes = capacityBytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d articles, %d/%d bytes, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                    entries, sizeBytes, capacityBytes, hits, misses, getHitRate() * 100, evictions);
+        }
+    }
+
+    public ArticleCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    /* The cached content of an article, or null */
+    public synchronized String get(int groupId, int articleId) {
+        String content = articles.get(key(groupId, articleId));
+        if (content == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return content;
+    }
+
+    /* Current generation, read before loading an article so put can tell if it was invalidated meanwhile */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /* Cache an article loaded while the cache was at the given generation */
+    public synchronized void put(int groupId, int articleId, String content, long loadedAt) {
+        long weight = weigh(content);
+        if (loadedAt != generation || weight > capacityBytes) {
+            return;
+        }
+        String previous = articles.put(key(groupId, articleId), content);
+        if (previous != null) {
+            sizeBytes -= weigh(previous);
+        }
+        sizeBytes += weight;
+
+        Iterator<String> eldest = articles.values().iterator();
+        while (sizeBytes > capacityBytes && eldest.hasNext()) {
+            sizeBytes -= weigh(eldest.next());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /* Forget one article */
+    public synchronized void invalidate(int groupId, int articleId) {
+        generation++;
+        String removed = articles.remove(key(groupId, articleId));
+        if (removed != null) {
+            sizeBytes -= weigh(removed);
+        }
+    }
+
+    /* Forget every article of a group */
+    public synchronized void invalidateGroup(int groupId) {
+        generation++;
+        Iterator<Map.Entry<Long, String>> it = articles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, String> entry = it.next();
+            if ((int) (entry.getKey() >>> 32) == groupId) {
+                sizeBytes -= weigh(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /* Forget everything */
+    public synchronized void clear() {
+        generation++;
+        articles.clear();
+        sizeBytes = 0;
+    }
+
+    /* Current cache metrics */
+    public synchronized Stats getStats() {
+        return new Stats(articles.size(), sizeBytes, capacityBytes, hits, misses, evictions);
+    }
+
+    private static long key(int groupId, int articleId) {
+        return ((long) groupId << 32) | (articleId & 0xffffffffL);
+    }
+
+    private static long weigh(String content) {
+        return ENTRY_OVERHEAD_BYTES + 2L * content.length();
+    }
+}
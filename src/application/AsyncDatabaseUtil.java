@@ -0,0 +1,218 @@
+package application;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p> AsyncDatabaseUtil </p>
+ *
+ * <p> Description: Runs DatabaseUtil calls off the calling thread and hands back CompletableFutures,
+ * so the JavaFX Application Thread never waits on SQL. The calls run on virtual threads when the JDK
+ * has them (21 and later) and on a small pool of daemon threads otherwise. Every future is completed,
+ * and every progress update delivered, through the callback executor given to the constructor; the
+ * application passes Platform::runLater, so callbacks can touch the scene graph directly. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class AsyncDatabaseUtil implements AutoCloseable {
+    // Threads of the fallback pool; the connection pool limits how many calls really run at once anyway
+    private static final int PLATFORM_THREADS = 4;
+
+    /* A call to make on the database, on a worker thread */
+    public interface DatabaseCall<T> {
+        T call(DatabaseUtil db) throws Exception;
+    }
+
+    /* A call with no result */
+    public interface DatabaseTask {
+        void run(DatabaseUtil db) throws Exception;
+    }
+
+    /* A query on the help item search index */
+    public interface SearchCall<T> {
+        T search(HelpItemSearchIndex index);
+    }
+
+    private final DatabaseUtil db;
+    private final Executor callbackExecutor;
+    private final ExecutorService executor;
+
+    public AsyncDatabaseUtil(DatabaseUtil db, Executor callbackExecutor) {
+        this(db, callbackExecutor, newDefaultExecutor("database-worker", PLATFORM_THREADS));
+    }
+
+    public AsyncDatabaseUtil(DatabaseUtil db, Executor callbackExecutor, ExecutorService executor) {
+        this.db = db;
+        this.callbackExecutor = callbackExecutor;
+        this.executor = executor;
+    }
+
+    /**
+     * A virtual thread per task on JDK 21 and later, otherwise a fixed pool of platform daemon threads
+     * with the given name. The method is looked up by reflection because the project still compiles
+     * for JDK 17, where it does not exist.
+     */
+    static ExecutorService newDefaultExecutor(String threadName, int platformThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = task -> {
+                Thread thread = new Thread(task, threadName + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newFixedThreadPool(platformThreads, factory);
+        }
+    }
+
+    /**
+     * Run a call on a worker thread. The returned future completes on the callback executor, with the
+     * result or with the exception the call threw (not wrapped in a CompletionException).
+     */
+    public <T> CompletableFuture<T> submit(DatabaseCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call(db);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor).whenComplete((value, error) -> callbackExecutor.execute(() -> {
+            if (error == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+        }));
+        return result;
+    }
+
+    /* Run a call with no result on a worker thread */
+    public CompletableFuture<Void> execute(DatabaseTask task) {
+        return submit(database -> {
+            task.run(database);
+            return null;
+        });
+    }
+
+    /**
+     * Wrap a listener so it is called on the callback executor. Updates that come in faster than the
+     * callback executor runs them are merged: only the latest one is delivered.
+     */
+    public DatabaseUtil.ProgressListener onCallbackThread(DatabaseUtil.ProgressListener listener) {
+        AtomicReference<long[]> latest = new AtomicReference<>();
+        return (done, total) -> {
+            if (latest.getAndSet(new long[]{done, total}) == null) {
+                callbackExecutor.execute(() -> {
+                    long[] update = latest.getAndSet(null);
+                    listener.onProgress(update[0], update[1]);
+                });
+            }
+        };
+    }
+
+    public CompletableFuture<Boolean> login(String username, String password) {
+        return submit(database -> database.login(username, password));
+    }
+
+    public CompletableFuture<User> getUserByUsername(String username) {
+        return submit(database -> database.getUserByUsername(username));
+    }
+
+    public CompletableFuture<List<User>> listUserAccounts() {
+        return submit(DatabaseUtil::listUserAccounts);
+    }
+
+    public CompletableFuture<Void> deleteUserAccount(String username) {
+        return execute(database -> database.deleteUserAccount(username));
+    }
+
+    public CompletableFuture<Void> addRoleToUser(String username, String role) {
+        return execute(database -> database.addRoleToUser(username, role));
+    }
+
+    public CompletableFuture<Void> removeRoleFromUser(String username, String role) {
+        return execute(database -> database.removeRoleFromUser(username, role));
+    }
+
+    public CompletableFuture<Void> updateUserDetails(String username, String email, String firstName, String middleName,
+                                                     String lastName, String preferredFirstName) {
+        return execute(database -> database.updateUserDetails(username, email, firstName, middleName, lastName, preferredFirstName));
+    }
+
+    /**
+     * Run a query on the search index on a worker thread. The first one builds the index from the
+     * help items table, which reads every help item, so it must not run on the calling thread either.
+     */
+    public <T> CompletableFuture<T> search(SearchCall<T> call) {
+        return submit(database -> call.search(database.getSearchIndex()));
+    }
+
+    public CompletableFuture<List<helpItem>> getAllHelpItems() {
+        return submit(DatabaseUtil::getAllHelpItems);
+    }
+
+    public CompletableFuture<helpItem> getHelpItem(String title) {
+        return submit(database -> database.getHelpItem(title));
+    }
+
+    public CompletableFuture<Void> addHelpItem(String title, String description, String shortDescription, String author,
+                                               String keyword, String reference, String level, String group) {
+        return execute(database -> database.addHelpItem(title, description, shortDescription, author, keyword, reference, level, group));
+    }
+
+    public CompletableFuture<Void> updateHelpItem(int id, helpItem item) {
+        return execute(database -> database.updateHelpItem(id, item));
+    }
+
+    public CompletableFuture<DatabaseUtil.BulkImportResult> addHelpItems(List<helpItem> items, DatabaseUtil.ProgressListener progress) {
+        DatabaseUtil.ProgressListener listener = onCallbackThread(progress);
+        return submit(database -> database.addHelpItems(items, DatabaseUtil.DEFAULT_BATCH_SIZE, listener));
+    }
+
+    public CompletableFuture<BackupWriter.Stats> backupHelpItemsToFile(String fileName, DatabaseUtil.ProgressListener progress) {
+        DatabaseUtil.ProgressListener listener = onCallbackThread(progress);
+        return submit(database -> database.backupHelpItemsToFile(fileName, fileName.endsWith(".gz"), listener));
+    }
+
+    public CompletableFuture<BackupWriter.Stats> backupSpecialAccessItemsToFile(String fileName, DatabaseUtil.ProgressListener progress) {
+        DatabaseUtil.ProgressListener listener = onCallbackThread(progress);
+        return submit(database -> database.backupSpecialAccessItemsToFile(fileName, fileName.endsWith(".gz"), listener));
+    }
+
+    public CompletableFuture<DatabaseUtil.RestoreResult> restoreHelpItemsFromFile(String fileName, DatabaseUtil.RestoreMode mode,
+                                                                                  DatabaseUtil.ProgressListener progress) {
+        DatabaseUtil.ProgressListener listener = onCallbackThread(progress);
+        return submit(database -> database.restoreHelpItemsFromFile(fileName, mode, listener));
+    }
+
+    public CompletableFuture<DatabaseUtil.RestoreResult> restoreSpecialAccessItemsFromFile(String fileName, DatabaseUtil.RestoreMode mode,
+                                                                                           DatabaseUtil.ProgressListener progress) {
+        DatabaseUtil.ProgressListener listener = onCallbackThread(progress);
+        return submit(database -> database.restoreSpecialAccessItemsFromFile(fileName, mode, listener));
+    }
+
+    /* Stop taking calls and wait a little for the running ones */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
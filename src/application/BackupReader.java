@@ -0,0 +1,262 @@
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p> BackupReader </p>
+ *
+ * <p> Description: Reads the files written by BackupWriter, plain or gzip compressed. The reading
+ * thread only finds where each record ends; splitting records into fields and turning them into rows
+ * can be done on a pool of worker threads with forEachChunk, which hands the parsed chunks back in
+ * file order and keeps only a few chunks in memory at a time. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class BackupReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Parsed chunks waiting for the consumer, per worker thread
+    private static final int CHUNKS_IN_FLIGHT_PER_WORKER = 2;
+
+    private final BufferedReader reader;
+    private final StringBuilder record = new StringBuilder(1024);
+    private long records = 0;
+    private final long fileSize;
+    // Bytes of the file read so far, compressed bytes for a gzip file
+    private volatile long bytesRead = 0;
+
+    /* Receives the parsed chunks in file order */
+    public interface ChunkConsumer<T> {
+        void accept(List<T> chunk) throws SQLException;
+    }
+
+    public BackupReader(Path file) throws IOException {
+        fileSize = Files.size(file);
+        InputStream in = new BufferedInputStream(new CountingInputStream(Files.newInputStream(file)), BUFFER_SIZE);
+        try {
+            if (isGzip(in)) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /* Counts the bytes taken from the file, so callers can report how far a restore has got */
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytesRead += n;
+            }
+            return n;
+        }
+    }
+
+    /* Check the gzip magic number without consuming it */
+    private static boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first == 0x1f && second == 0x8b;
+    }
+
+    /* The text of the next record without its line break, or null at the end of the file */
+    public String readRawRecord() throws IOException {
+        record.setLength(0);
+        boolean quoted = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n' && !quoted) {
+                records++;
+                return record.toString();
+            }
+            record.append((char) c);
+        }
+        if (quoted) {
+            throw new IOException("Backup file ends inside a quoted field");
+        }
+        if (record.length() == 0) {
+            return null;
+        }
+        records++;
+        return record.toString();
+    }
+
+    /* The fields of the next record, or null at the end of the file */
+    public String[] readRecord() throws IOException {
+        String raw = readRawRecord();
+        return raw == null ? null : parseRecord(raw);
+    }
+
+    /* Size of the file in bytes */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /* Bytes of the file read so far; runs a little ahead of the records returned because of buffering */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /* Number of records read so far */
+    public long getRecords() {
+        return records;
+    }
+
+    /* Split a record into its fields, undoing the quoting done by BackupWriter */
+    public static String[] parseRecord(String raw) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < raw.length() && raw.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= raw.length()) {
+                        throw new IllegalArgumentException("Unterminated quoted field in record: " + raw);
+                    }
+                    char c = raw.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < raw.length() && raw.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < raw.length() && raw.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Unexpected text after a quoted field in record: " + raw);
+                }
+                fields.add(field.toString());
+            } else {
+                int end = raw.indexOf(',', i);
+                String value = raw.substring(i, end < 0 ? raw.length() : end);
+                fields.add(value.equals(BackupWriter.NULL_FIELD) ? null : value);
+                i = end < 0 ? raw.length() : end;
+            }
+            if (i >= raw.length()) {
+                return fields.toArray(new String[0]);
+            }
+            i++; // skip the comma
+        }
+    }
+
+    /**
+     * Read the rest of the file in chunks of chunkSize records. Each chunk is parsed and converted
+     * with the parser on one of the worker threads, then given to the consumer on the calling thread
+     * in file order. A record the parser returns null for is dropped. Reading stops at the first
+     * error, which is rethrown here.
+     */
+    public <T> void forEachChunk(int chunkSize, int workers, Function<String[], T> parser, ChunkConsumer<T> consumer)
+            throws IOException, SQLException {
+        if (chunkSize < 1 || workers < 1) {
+            throw new IllegalArgumentException("Chunk size and worker count must be at least 1");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "backup-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<List<T>>> pending = new ArrayDeque<>();
+        try {
+            List<String> raw = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = readRawRecord()) != null) {
+                raw.add(line);
+                if (raw.size() == chunkSize) {
+                    pending.add(submit(pool, raw, parser));
+                    raw = new ArrayList<>(chunkSize);
+                    if (pending.size() >= workers * CHUNKS_IN_FLIGHT_PER_WORKER) {
+                        consumer.accept(await(pending.poll()));
+                    }
+                }
+            }
+            if (!raw.isEmpty()) {
+                pending.add(submit(pool, raw, parser));
+            }
+            while (!pending.isEmpty()) {
+                consumer.accept(await(pending.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T> Future<List<T>> submit(ExecutorService pool, List<String> raw, Function<String[], T> parser) {
+        return pool.submit(() -> {
+            List<T> parsed = new ArrayList<>(raw.size());
+            for (String line : raw) {
+                T row = parser.apply(parseRecord(line));
+                if (row != null) {
+                    parsed.add(row);
+                }
+            }
+            return parsed;
+        });
+    }
+
+    private static <T> List<T> await(Future<List<T>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the backup", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw new IOException("Malformed backup record: " + cause.getMessage(), cause);
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,240 @@
+package application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p> BackupWriter </p>
+ *
+ * <p> Description: Streams backup records to a file through a FileChannel. Records are CSV lines:
+ * fields holding a comma, quote or line break are quoted with doubled quotes, and a null value is
+ * written as an unquoted \N so it can be told apart from an empty string. With compression on the
+ * file is written in gzip format using the JDK Deflater. Memory use does not depend on the number
+ * of records. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class BackupWriter implements Closeable {
+    public static final String NULL_FIELD = "\\N";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final StringBuilder line = new StringBuilder(1024);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    // Only used when compressing
+    private final Deflater deflater;
+    private final CRC32 crc;
+    private final byte[] plain;
+    private final byte[] compressed;
+    private final ByteBuffer compressedBuffer;
+
+    private final long start = System.nanoTime();
+    private long records = 0;
+    private long uncompressedBytes = 0;
+    private long bytesWritten = 0;
+    private boolean finished = false;
+    private boolean closed = false;
+
+    /* Throughput and size of a finished backup */
+    public static class Stats {
+        public final long records;
+        public final long uncompressedBytes;
+        public final long bytesWritten;
+        public final long elapsedNanos;
+
+        Stats(long records, long uncompressedBytes, long bytesWritten, long elapsedNanos) {
+            this.records = records;
+            this.uncompressedBytes = uncompressedBytes;
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double getRecordsPerSecond() {
+            return elapsedNanos == 0 ? 0 : records * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        public double getMegabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : uncompressedBytes / (1024.0 * 1024.0) * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d records, %d bytes (%d on disk) in %.1f ms, %.0f records/sec, %.1f MB/s",
+                    records, uncompressedBytes, bytesWritten, elapsedNanos / 1_000_000.0,
+                    getRecordsPerSecond(), getMegabytesPerSecond());
+        }
+    }
+
+    public BackupWriter(Path file, boolean compress) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (compress) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            crc = new CRC32();
+            plain = new byte[BUFFER_SIZE];
+            compressed = new byte[BUFFER_SIZE];
+            compressedBuffer = ByteBuffer.wrap(compressed);
+            writeFully(ByteBuffer.wrap(GZIP_HEADER));
+        } else {
+            deflater = null;
+            crc = null;
+            plain = null;
+            compressed = null;
+            compressedBuffer = null;
+        }
+    }
+
+    /* Write one record, escaping the fields as needed */
+    public void writeRecord(Object... fields) throws IOException {
+        line.setLength(0);
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendField(line, fields[i]);
+        }
+        line.append('\n');
+        encode(CharBuffer.wrap(line));
+        records++;
+    }
+
+    /* Number of records written so far */
+    public long getRecords() {
+        return records;
+    }
+
+    /* Size and throughput of what was written so far */
+    public Stats getStats() {
+        return new Stats(records, uncompressedBytes, bytesWritten, System.nanoTime() - start);
+    }
+
+    /* Quote a field if it contains a separator, quote or line break */
+    static void appendField(StringBuilder out, Object field) {
+        if (field == null) {
+            out.append(NULL_FIELD);
+            return;
+        }
+        String value = field.toString();
+        boolean quote = value.equals(NULL_FIELD);
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    private void encode(CharBuffer chars) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, false);
+            if (result.isOverflow()) {
+                flushBuffer();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /* Hand the encoded bytes to the channel, compressing them first if asked to */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        uncompressedBytes += buffer.remaining();
+        if (deflater == null) {
+            writeFully(buffer);
+        } else {
+            while (buffer.hasRemaining()) {
+                int length = Math.min(buffer.remaining(), plain.length);
+                buffer.get(plain, 0, length);
+                crc.update(plain, 0, length);
+                deflater.setInput(plain, 0, length);
+                while (!deflater.needsInput()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+            }
+        }
+        buffer.clear();
+    }
+
+    private void deflate(int flush) throws IOException {
+        int length = deflater.deflate(compressed, 0, compressed.length, flush);
+        if (length > 0) {
+            compressedBuffer.clear().limit(length);
+            writeFully(compressedBuffer);
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            bytesWritten += channel.write(bytes);
+        }
+    }
+
+    /*
+     * Write out what is still buffered and, when compressing, the gzip trailer, so getStats counts the
+     * whole file. No record may be written after this; close still has to be called.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        flushBuffer();
+        if (deflater != null) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue());
+            trailer.putInt((int) uncompressedBytes);
+            trailer.flip();
+            writeFully(trailer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            finish();
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package application;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p> ConnectionPool </p>
+ *
+ * <p> Description: Bounded pool of H2 connections used by DatabaseUtil. A thread keeps the same
+ * connection while it holds one, so nested DatabaseUtil calls share it instead of borrowing a second
+ * one. Idle connections are evicted after a timeout and checked before they are handed out again.
+ * Each connection keeps a StatementCache, so prepareStatement on a borrowed connection reuses
+ * statements that were already compiled. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // Connections returned more recently than this are handed out again without validating them
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ThreadLocal<Lease> leases = new ThreadLocal<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder borrowNanos = new LongAdder();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    /* A physical connection owned by the pool */
+    private class PooledConnection {
+        final Connection connection;
+        final StatementCache statements;
+        long lastUsed;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new StatementCache(connection, statementCacheSize, statementHits, statementMisses, statementEvictions);
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /* A connection handed to a thread, counted so nested borrows share it */
+    private class Lease implements InvocationHandler {
+        final PooledConnection pooled;
+        final Connection proxy;
+        int depth = 1;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release(this);
+                    return null;
+                case "isClosed":
+                    return depth == 0 || pooled.connection.isClosed();
+                case "prepareStatement":
+                    if (args.length == 1) {
+                        return pooled.statements.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+                    }
+                    if (args.length == 2 && args[1] instanceof Integer) {
+                        return pooled.statements.prepare((String) args[0], (Integer) args[1]);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(pooled.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /* Snapshot of the pool metrics */
+    public static class Stats {
+        public final int maxSize;
+        public final int active;
+        public final int idle;
+        public final long borrows;
+        public final double averageBorrowMicros;
+        public final double maxBorrowMicros;
+        public final long timeouts;
+        public final long created;
+        public final long evicted;
+        public final long validationFailures;
+        public final long statementCacheHits;
+        public final long statementCacheMisses;
+        public final long statementCacheEvictions;
+
+        Stats(int maxSize, int active, int idle, long borrows, long borrowNanos, long maxBorrowNanos,
+              long timeouts, long created, long evicted, long validationFailures,
+              long statementCacheHits, long statementCacheMisses, long statementCacheEvictions) {
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.borrows = borrows;
+            this.averageBorrowMicros = borrows == 0 ? 0 : borrowNanos / 1000.0 / borrows;
+            this.maxBorrowMicros = maxBorrowNanos / 1000.0;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.evicted = evicted;
+            this.validationFailures = validationFailures;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+            this.statementCacheEvictions = statementCacheEvictions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pool %d/%d active, %d idle, %d borrows, avg %.1f us, max %.1f us, "
+                            + "%d timeouts, %d created, %d evicted, %d failed validation, "
+                            + "statement cache %d hits, %d misses, %d evictions",
+                    active, maxSize, idle, borrows, averageBorrowMicros, maxBorrowMicros,
+                    timeouts, created, evicted, validationFailures,
+                    statementCacheHits, statementCacheMisses, statementCacheEvictions);
+        }
+    }
+
+    public ConnectionPool(String url, String user, String password, int maxSize, long idleTimeoutMillis,
+                          long borrowTimeoutMillis, int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /* Borrow a connection; closing it gives it back. A thread asking again gets the same connection */
+    public Connection getConnection() throws SQLException {
+        Lease lease = leases.get();
+        if (lease != null) {
+            lease.depth++;
+            return lease.proxy;
+        }
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        PooledConnection pooled;
+        try {
+            pooled = takeIdle();
+            if (pooled == null) {
+                pooled = new PooledConnection(DriverManager.getConnection(url, user, password));
+                created.increment();
+            }
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        borrows.increment();
+        borrowNanos.add(elapsed);
+        maxBorrowNanos.accumulateAndGet(elapsed, Math::max);
+
+        lease = new Lease(pooled);
+        leases.set(lease);
+        return lease.proxy;
+    }
+
+    /* Take a healthy idle connection, dropping expired or broken ones */
+    private PooledConnection takeIdle() {
+        while (true) {
+            PooledConnection pooled;
+            synchronized (idle) {
+                pooled = idle.pollFirst();
+            }
+            if (pooled == null) {
+                return null;
+            }
+            long idleMillis = System.currentTimeMillis() - pooled.lastUsed;
+            if (idleMillis > idleTimeoutMillis) {
+                evicted.increment();
+                closeQuietly(pooled);
+                continue;
+            }
+            if (idleMillis < VALIDATION_BYPASS_MILLIS) {
+                return pooled;
+            }
+            try {
+                if (pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    return pooled;
+                }
+            } catch (SQLException ignored) {
+                // treated as invalid below
+            }
+            validationFailures.increment();
+            closeQuietly(pooled);
+        }
+    }
+
+    private void release(Lease lease) {
+        if (lease.depth == 0) {
+            return;
+        }
+        if (--lease.depth > 0) {
+            return;
+        }
+        leases.remove();
+        PooledConnection pooled = lease.pooled;
+        try {
+            // Never hand out a connection with a half finished transaction
+            if (!pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            if (closed) {
+                closeQuietly(pooled);
+            } else {
+                synchronized (idle) {
+                    idle.addFirst(pooled);
+                }
+            }
+        } catch (SQLException e) {
+            validationFailures.increment();
+            closeQuietly(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /* Close connections that have been idle longer than the timeout */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        synchronized (idle) {
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastUsed > idleTimeoutMillis) {
+                    it.remove();
+                    evicted.increment();
+                    closeQuietly(pooled);
+                }
+            }
+        }
+    }
+
+    /* Current pool metrics */
+    public Stats getStats() {
+        int idleCount;
+        synchronized (idle) {
+            idleCount = idle.size();
+        }
+        return new Stats(maxSize, maxSize - permits.availablePermits(), idleCount, borrows.sum(), borrowNanos.sum(),
+                maxBorrowNanos.get(), timeouts.sum(), created.sum(), evicted.sum(), validationFailures.sum(),
+                statementHits.sum(), statementMisses.sum(), statementEvictions.sum());
+    }
+
+    /* Close the idle connections; borrowed ones are closed when they come back */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        synchronized (idle) {
+            for (PooledConnection pooled : idle) {
+                closeQuietly(pooled);
+            }
+            idle.clear();
+        }
+    }
+
+    private static void closeQuietly(PooledConnection pooled) {
+        pooled.statements.close();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package application;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * <p> ConnectionSource </p>
+ *
+ * <p> Description: Where the classes that work on the database beside DatabaseUtil, such as
+ * SchemaMigrator, GroupKeyStore and KeyRotationJob, get their connections from. In the application
+ * it is DatabaseUtil::getConnection, so they share its connection pool; a test can hand them any
+ * connection it likes. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public interface ConnectionSource {
+    Connection getConnection() throws SQLException;
+}
@@ -0,0 +1,214 @@
+package application;
+
+/**
+ * <p> DatabaseEvent </p>
+ *
+ * <p> Description: The changes DatabaseUtil publishes on its DatabaseEventBus, one class per kind of
+ * change. Each event carries the row that changed, so a subscriber can update its own copy of that
+ * row instead of loading everything again. Events are published after the change is committed, on
+ * the thread that made it. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public abstract class DatabaseEvent {
+
+    /* A help item was added, with the id the database gave it */
+    public static final class HelpItemAdded extends DatabaseEvent {
+        public final helpItem item;
+
+        HelpItemAdded(helpItem item) {
+            this.item = item;
+        }
+
+        @Override
+        public String toString() {
+            return "HelpItemAdded " + item.getId();
+        }
+    }
+
+    /* A help item was saved with new values */
+    public static final class HelpItemUpdated extends DatabaseEvent {
+        public final helpItem item;
+
+        HelpItemUpdated(helpItem item) {
+            this.item = item;
+        }
+
+        @Override
+        public String toString() {
+            return "HelpItemUpdated " + item.getId();
+        }
+    }
+
+    /* The help items with a title were deleted */
+    public static final class HelpItemDeleted extends DatabaseEvent {
+        public final String title;
+
+        HelpItemDeleted(String title) {
+            this.title = title;
+        }
+
+        @Override
+        public String toString() {
+            return "HelpItemDeleted " + title;
+        }
+    }
+
+    /* Many help items changed at once: a bulk import, a restore or a reset */
+    public static final class HelpItemsReplaced extends DatabaseEvent {
+        @Override
+        public String toString() {
+            return "HelpItemsReplaced";
+        }
+    }
+
+    /* A user registered */
+    public static final class UserAdded extends DatabaseEvent {
+        public final String username;
+        public final String roles;
+
+        UserAdded(String username, String roles) {
+            this.username = username;
+            this.roles = roles;
+        }
+
+        @Override
+        public String toString() {
+            return "UserAdded " + username;
+        }
+    }
+
+    /* The details of a user changed */
+    public static final class UserUpdated extends DatabaseEvent {
+        public final String username;
+
+        UserUpdated(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public String toString() {
+            return "UserUpdated " + username;
+        }
+    }
+
+    /* A user account was deleted */
+    public static final class UserDeleted extends DatabaseEvent {
+        public final String username;
+
+        UserDeleted(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public String toString() {
+            return "UserDeleted " + username;
+        }
+    }
+
+    /* A user was given a role, or had one taken away */
+    public static final class UserRoleChanged extends DatabaseEvent {
+        public final String username;
+        public final String role;
+        public final boolean added;
+
+        UserRoleChanged(String username, String role, boolean added) {
+            this.username = username;
+            this.role = role;
+            this.added = added;
+        }
+
+        @Override
+        public String toString() {
+            return "UserRoleChanged " + username + (added ? " +" : " -") + role;
+        }
+    }
+
+    /* Every user was deleted */
+    public static final class UsersReset extends DatabaseEvent {
+        @Override
+        public String toString() {
+            return "UsersReset";
+        }
+    }
+
+    /* A special access group was created */
+    public static final class GroupCreated extends DatabaseEvent {
+        public final int groupId;
+        public final String groupName;
+
+        GroupCreated(int groupId, String groupName) {
+            this.groupId = groupId;
+            this.groupName = groupName;
+        }
+
+        @Override
+        public String toString() {
+            return "GroupCreated " + groupId;
+        }
+    }
+
+    /* A special access group was deleted with its permissions and articles */
+    public static final class GroupDeleted extends DatabaseEvent {
+        public final int groupId;
+
+        GroupDeleted(int groupId) {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public String toString() {
+            return "GroupDeleted " + groupId;
+        }
+    }
+
+    /* A user was granted a permission in a group, or had it revoked */
+    public static final class GroupPermissionChanged extends DatabaseEvent {
+        public final int groupId;
+        public final String username;
+        public final String permissionType;
+        public final boolean granted;
+
+        GroupPermissionChanged(int groupId, String username, String permissionType, boolean granted) {
+            this.groupId = groupId;
+            this.username = username;
+            this.permissionType = permissionType;
+            this.granted = granted;
+        }
+
+        @Override
+        public String toString() {
+            return "GroupPermissionChanged " + groupId + " " + username + (granted ? " +" : " -") + permissionType;
+        }
+    }
+
+    /* An article was added to a group, or removed from it */
+    public static final class GroupArticleChanged extends DatabaseEvent {
+        public final int groupId;
+        public final int articleId;
+        public final boolean added;
+
+        GroupArticleChanged(int groupId, int articleId, boolean added) {
+            this.groupId = groupId;
+            this.articleId = articleId;
+            this.added = added;
+        }
+
+        @Override
+        public String toString() {
+            return "GroupArticleChanged " + groupId + "/" + articleId + (added ? " added" : " removed");
+        }
+    }
+
+    /* The group articles were restored from a backup */
+    public static final class GroupArticlesReplaced extends DatabaseEvent {
+        @Override
+        public String toString() {
+            return "GroupArticlesReplaced";
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package application;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p> DatabaseEventBus </p>
+ *
+ * <p> Description: Publish/subscribe for DatabaseEvents. A subscriber names the event class it wants
+ * and gets every published event of that class or a subclass, so subscribing to DatabaseEvent itself
+ * gets everything. Publishing is synchronous: subscribers run on the publishing thread, one after the
+ * other, and a subscriber that throws is reported without stopping the rest. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class DatabaseEventBus {
+
+    /* Receives the events of one type */
+    public interface Subscriber<E extends DatabaseEvent> {
+        void on(E event);
+    }
+
+    /* Returned by subscribe; closing it stops the events */
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Registration<E extends DatabaseEvent> implements Subscription {
+        private final DatabaseEventBus bus;
+        private final Class<E> type;
+        private final Subscriber<? super E> subscriber;
+
+        Registration(DatabaseEventBus bus, Class<E> type, Subscriber<? super E> subscriber) {
+            this.bus = bus;
+            this.type = type;
+            this.subscriber = subscriber;
+        }
+
+        void deliver(DatabaseEvent event) {
+            if (type.isInstance(event)) {
+                subscriber.on(type.cast(event));
+            }
+        }
+
+        @Override
+        public void close() {
+            bus.registrations.remove(this);
+        }
+    }
+
+    // Copied on write, publishing never waits for a subscribe and sees a consistent list
+    private final List<Registration<?>> registrations = new CopyOnWriteArrayList<>();
+
+    public <E extends DatabaseEvent> Subscription subscribe(Class<E> type, Subscriber<? super E> subscriber) {
+        Registration<E> registration = new Registration<>(this, type, subscriber);
+        registrations.add(registration);
+        return registration;
+    }
+
+    public void publish(DatabaseEvent event) {
+        for (Registration<?> registration : registrations) {
+            try {
+                registration.deliver(event);
+            } catch (RuntimeException e) {
+                System.out.println("Subscriber failed on " + event + ": " + e);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /* Number of live subscriptions */
+    public int getSubscriberCount() {
+        return registrations.size();
+    }
+}
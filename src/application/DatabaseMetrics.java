@@ -0,0 +1,420 @@
+package application;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p> DatabaseMetrics </p>
+ *
+ * <p> Description: Call counts, errors, rows returned and a latency histogram for every public
+ * DatabaseUtil method, cheap enough to leave on in production. Recording a call costs two
+ * System.nanoTime reads, a map lookup and a few uncontended adds. The histogram is HDR style: each
+ * power of two of nanoseconds is split into 32 linear buckets, so any percentile is within about 3%
+ * of the true latency from one microsecond up to minutes, in a fixed 9 KB per method. The counters
+ * can be read as a text snapshot, printed periodically with the change since the last one, and once
+ * registered each method is an MXBean named application:type=DatabaseMetrics,database=...,name=method
+ * for JConsole or any JMX client. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class DatabaseMetrics {
+    // 2^SUB_BITS linear buckets per power of two
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Latencies are capped at 2^MAX_EXPONENT nanoseconds, about 18 minutes
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+    /* A recorded call that returns a result */
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /* A recorded call without a result */
+    public interface Task<E extends Exception> {
+        void run() throws E;
+    }
+
+    /* A recorded call doing both database and file work */
+    public interface IOCall<T> {
+        T call() throws SQLException, IOException;
+    }
+
+    /* What JMX clients see for one method; times are in milliseconds */
+    public interface CallStatsMXBean {
+        long getCalls();
+        long getErrors();
+        long getRows();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP90Millis();
+        double getP99Millis();
+        double getMaxMillis();
+    }
+
+    /* The counters of one method */
+    public static final class CallStats implements CallStatsMXBean {
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        CallStats(String name) {
+            this.name = name;
+        }
+
+        void add(long nanos, long rowCount, boolean failed) {
+            calls.increment();
+            totalNanos.add(nanos);
+            histogram.incrementAndGet(bucketOf(nanos));
+            if (failed) {
+                errors.increment();
+            } else if (rowCount > 0) {
+                rows.add(rowCount);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /* The counters as they are now */
+        public Snapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.get(i);
+            }
+            return new Snapshot(name, calls.sum(), errors.sum(), rows.sum(), totalNanos.sum(), counts);
+        }
+
+        @Override
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getRows() {
+            return rows.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return snapshot().getMeanMillis();
+        }
+
+        @Override
+        public double getP50Millis() {
+            return snapshot().getPercentileMillis(0.50);
+        }
+
+        @Override
+        public double getP90Millis() {
+            return snapshot().getPercentileMillis(0.90);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return snapshot().getPercentileMillis(0.99);
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return snapshot().getPercentileMillis(1.0);
+        }
+    }
+
+    /* The counters of one method at one moment, or their change between two moments */
+    public static final class Snapshot {
+        public final String name;
+        public final long calls;
+        public final long errors;
+        public final long rows;
+        public final long totalNanos;
+        private final long[] counts;
+
+        Snapshot(String name, long calls, long errors, long rows, long totalNanos, long[] counts) {
+            this.name = name;
+            this.calls = calls;
+            this.errors = errors;
+            this.rows = rows;
+            this.totalNanos = totalNanos;
+            this.counts = counts;
+        }
+
+        /* What happened between an earlier snapshot of the same method and this one */
+        public Snapshot since(Snapshot earlier) {
+            long[] difference = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                difference[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(name, calls - earlier.calls, errors - earlier.errors, rows - earlier.rows,
+                    totalNanos - earlier.totalNanos, difference);
+        }
+
+        public double getMeanMillis() {
+            return calls == 0 ? 0 : totalNanos / 1_000_000.0 / calls;
+        }
+
+        /* The latency a fraction of the calls took at most, 1.0 for the slowest call */
+        public double getPercentileMillis(double fraction) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return valueOf(i) / 1_000_000.0;
+                }
+            }
+            return valueOf(BUCKETS - 1) / 1_000_000.0;
+        }
+    }
+
+    private final Map<String, CallStats> stats = new ConcurrentHashMap<>();
+    private final ToLongFunction<Object> rowCounter;
+    private volatile String mbeanDatabase;
+    private ScheduledExecutorService reporter;
+
+    /* rowCounter tells how many rows a result holds */
+    public DatabaseMetrics(ToLongFunction<Object> rowCounter) {
+        this.rowCounter = rowCounter;
+    }
+
+    public <T, E extends Exception> T record(String name, Call<T, E> call) throws E {
+        long start = System.nanoTime();
+        boolean failed = true;
+        long rowCount = 0;
+        try {
+            T result = call.call();
+            rowCount = rowCounter.applyAsLong(result);
+            failed = false;
+            return result;
+        } finally {
+            statsFor(name).add(System.nanoTime() - start, rowCount, failed);
+        }
+    }
+
+    public <E extends Exception> void run(String name, Task<E> task) throws E {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            task.run();
+            failed = false;
+        } finally {
+            statsFor(name).add(System.nanoTime() - start, 0, failed);
+        }
+    }
+
+    /* Same as record, for calls that can throw both SQLException and IOException */
+    public <T> T recordIO(String name, IOCall<T> call) throws SQLException, IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        long rowCount = 0;
+        try {
+            T result = call.call();
+            rowCount = rowCounter.applyAsLong(result);
+            failed = false;
+            return result;
+        } finally {
+            statsFor(name).add(System.nanoTime() - start, rowCount, failed);
+        }
+    }
+
+    /* The counters of a method, or null if it was never called */
+    public CallStats get(String name) {
+        return stats.get(name);
+    }
+
+    public Collection<CallStats> getAll() {
+        return stats.values();
+    }
+
+    /* Forget everything recorded so far */
+    public void reset() {
+        stats.clear();
+        // Registered beans belong to the old counters; register the new ones as they are created
+        String database = mbeanDatabase;
+        if (database != null) {
+            unregisterMBeans();
+            mbeanDatabase = database;
+        }
+    }
+
+    private CallStats statsFor(String name) {
+        CallStats callStats = stats.get(name);
+        if (callStats == null) {
+            callStats = stats.computeIfAbsent(name, key -> {
+                CallStats created = new CallStats(key);
+                register(created);
+                return created;
+            });
+        }
+        return callStats;
+    }
+
+    /**
+     * Register an MXBean for every method, now and as methods are first called. database tells apart
+     * the beans of several DatabaseUtils in one JVM, such as their JDBC URLs.
+     */
+    public synchronized void registerMBeans(String database) {
+        unregisterMBeans();
+        mbeanDatabase = database;
+        for (CallStats callStats : stats.values()) {
+            register(callStats);
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        if (mbeanDatabase == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (String name : stats.keySet()) {
+            try {
+                ObjectName objectName = objectName(mbeanDatabase, name);
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            } catch (JMException e) {
+                System.out.println("Could not unregister metrics of " + name + ": " + e);
+            }
+        }
+        mbeanDatabase = null;
+    }
+
+    private void register(CallStats callStats) {
+        String database = mbeanDatabase;
+        if (database == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = objectName(database, callStats.name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(callStats, objectName);
+        } catch (JMException e) {
+            System.out.println("Could not register metrics of " + callStats.name + ": " + e);
+        }
+    }
+
+    private static ObjectName objectName(String database, String name) throws JMException {
+        return new ObjectName("application:type=DatabaseMetrics,database=" + ObjectName.quote(database) + ",name=" + name);
+    }
+
+    /* Every method's counters since the start, slowest in total first */
+    public String snapshot() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (CallStats callStats : stats.values()) {
+            snapshots.add(callStats.snapshot());
+        }
+        return format(snapshots);
+    }
+
+    /**
+     * Pass a snapshot of what changed in each period to output, every period, on a daemon thread.
+     * Methods not called during a period are left out of its snapshot.
+     */
+    public synchronized void startReporting(long period, TimeUnit unit, Consumer<String> output) {
+        stopReporting();
+        Map<String, Snapshot> previous = new HashMap<>();
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "database-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            List<Snapshot> changes = new ArrayList<>();
+            for (CallStats callStats : stats.values()) {
+                Snapshot now = callStats.snapshot();
+                Snapshot before = previous.put(callStats.name, now);
+                Snapshot change = before == null ? now : now.since(before);
+                if (change.calls > 0) {
+                    changes.add(change);
+                }
+            }
+            if (!changes.isEmpty()) {
+                output.accept(format(changes));
+            }
+        }, period, period, unit);
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    private static String format(List<Snapshot> snapshots) {
+        snapshots.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        StringBuilder text = new StringBuilder(String.format("%-36s %9s %7s %10s %9s %9s %9s %9s %9s%n",
+                "method", "calls", "errors", "rows", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (Snapshot snapshot : snapshots) {
+            text.append(String.format("%-36s %9d %7d %10d %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                    snapshot.name, snapshot.calls, snapshot.errors, snapshot.rows, snapshot.getMeanMillis(),
+                    snapshot.getPercentileMillis(0.50), snapshot.getPercentileMillis(0.90),
+                    snapshot.getPercentileMillis(0.99), snapshot.getPercentileMillis(1.0)));
+        }
+        return text.toString();
+    }
+
+    /* The bucket of a latency: the value itself below SUB_BUCKETS, then SUB_BUCKETS per power of two */
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) - SUB_BUCKETS);
+    }
+
+    /* The middle of a bucket, in nanoseconds */
+    static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long low = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return low + ((1L << shift) >> 1);
+    }
+}
@@ -7,12 +7,28 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.ArrayList;
-import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import Encryption.EncryptedPayload;
 import Encryption.EncryptionHelper;
 import Encryption.EncryptionUtils;
 
@@ -41,12 +57,201 @@ public class DatabaseUtil {
     private static final int CODE_LENGTH = 10;
     private static final SecureRandom RANDOM = new SecureRandom();
 
-    private Connection connection = null;
-    Statement statement = null;
+    // Connection pool settings
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    private static final long BORROW_TIMEOUT_MILLIS = 30 * 1000;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    // Backup file layout: a header record, a record with the column names, then one record per row
+    static final String BACKUP_HEADER = "#helpsystem_backup";
+    static final int BACKUP_VERSION = 1;
+    static final String[] HELP_ITEM_BACKUP_COLUMNS = {"id", "title", "description", "short_description", "authors",
+            "keywords", "references", "level", "group_name"};
+    // A group article carries the wrapped group key it is encrypted with, so the backup can be read on its own
+    static final String[] SPECIAL_ACCESS_BACKUP_COLUMNS = {"article_id", "group_id", "payload", "key_version", "wrapped_key"};
+
+    // Threads parsing backup records during a restore
+    private static final int RESTORE_WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    // Memory the decrypted article cache may use
+    private static final long ARTICLE_CACHE_BYTES = 32L * 1024 * 1024;
+
+    // Articles a second a key rotation resumed at startup re-encrypts, so the users keep most of the database
+    private static final int DEFAULT_ROTATION_ROWS_PER_SECOND = 500;
+    // How long closing the connection waits for a running key rotation to finish its chunk
+    private static final long ROTATION_STOP_TIMEOUT_SECONDS = 30;
+
+    // Rows per JDBC batch and per transaction for bulk imports
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final String jdbcUrl;
+    private ConnectionPool connectionPool = null;
 
     private EncryptionHelper encryptionHelper;
 
+    // Per-group data keys, wrapped by the master key in encryptionHelper; made on connecting
+    private GroupKeyStore groupKeys = null;
+
+    // The key rotation running in the background, if any, and the future its final progress completes
+    private final Object keyRotationLock = new Object();
+    private KeyRotationJob keyRotationJob;
+    private CompletableFuture<KeyRotationJob.Progress> keyRotation;
+
+    // In-memory search index over the help items, built on first use
+    private final HelpItemSearchIndex searchIndex = new HelpItemSearchIndex();
+    private boolean searchIndexLoaded = false;
+
+    // Decrypted special access articles, so popular articles are decrypted once instead of on every read
+    private final ArticleCache articleCache = new ArticleCache(ARTICLE_CACHE_BYTES);
+
+    // Group permissions per user as bitsets, so permission checks do not query the database
+    private final PermissionIndex permissionIndex = new PermissionIndex();
+
+    // Every change made through this class is published here after it is committed
+    private final DatabaseEventBus eventBus = new DatabaseEventBus();
+
+    // Calls, latency, rows and errors of every public method, also published over JMX while connected
+    private final DatabaseMetrics metrics = new DatabaseMetrics(DatabaseUtil::rowsOf);
+
+    // Replaced by setPasswordHasher to change the cost; stored hashes follow on each user's next login
+    private volatile PasswordHasher passwordHasher = new PasswordHasher();
+
+    /* Outcome of a bulk import: the generated ids in input order and how fast the rows went in */
+    public static class BulkImportResult {
+        public final List<Integer> ids;
+        public final long elapsedNanos;
+
+        BulkImportResult(List<Integer> ids, long elapsedNanos) {
+            this.ids = ids;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getRowCount() {
+            return ids.size();
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : ids.size() * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows in %.1f ms (%.0f rows/sec)", ids.size(), elapsedNanos / 1_000_000.0, getRowsPerSecond());
+        }
+    }
+
+    /* How a restore treats the rows already in the table */
+    public enum RestoreMode {
+        // Delete every existing row first, the table ends up holding exactly the backed up rows
+        REPLACE,
+        // Keep the existing rows and only add backed up rows that are not there yet
+        MERGE
+    }
+
+    /* Outcome of a restore: how many rows went in, how many were skipped and how long it took */
+    public static class RestoreResult {
+        public final long restored;
+        public final long skipped;
+        public final long elapsedNanos;
+
+        RestoreResult(long restored, long skipped, long elapsedNanos) {
+            this.restored = restored;
+            this.skipped = skipped;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : restored * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows restored, %d skipped in %.1f ms (%.0f rows/sec)",
+                    restored, skipped, elapsedNanos / 1_000_000.0, getRowsPerSecond());
+        }
+    }
+
+    /**
+     * Told how far a long operation has got. Called on the thread doing the work, every batch or
+     * so; total is -1 when it is not known up front.
+     */
+    public interface ProgressListener {
+        ProgressListener NONE = (done, total) -> { };
+
+        void onProgress(long done, long total);
+    }
+
+    /* The columns of a help item a list shows, without the long text fields */
+    public static class HelpItemSummary {
+        public final int id;
+        public final String title;
+        public final String level;
+        public final String group;
+
+        HelpItemSummary(int id, String title, String level, String group) {
+            this.id = id;
+            this.title = title;
+            this.level = level;
+            this.group = group;
+        }
+    }
+
+    /**
+     * Where each page of help items starts: the id of the first item of every page of pageSize
+     * items, in id order, and the number of items in all pages together.
+     */
+    public static class HelpItemPageIndex {
+        public final int pageSize;
+        public final int total;
+        public final int[] firstIds;
+
+        HelpItemPageIndex(int pageSize, int total, int[] firstIds) {
+            this.pageSize = pageSize;
+            this.total = total;
+            this.firstIds = firstIds;
+        }
+    }
+
+    /* A group article read from a backup */
+    private static class GroupArticleRow {
+        final int articleId;
+        final int groupId;
+        final byte[] payload;
+        // The group key version the payload names, 0 if it is under the master key, -1 if unreadable
+        final int keyVersion;
+        // That group key as the backup holds it, null if the backup has none
+        final byte[] wrappedKey;
+
+        GroupArticleRow(int articleId, int groupId, byte[] payload, byte[] wrappedKey) {
+            this.articleId = articleId;
+            this.groupId = groupId;
+            this.payload = payload;
+            this.keyVersion = payloadKeyVersion(payload);
+            this.wrappedKey = wrappedKey;
+        }
+    }
+
+    /* Fills the backup record of the current row of a backup query */
+    private interface BackupRecordMapper {
+        void map(ResultSet row, Object[] record) throws SQLException;
+    }
+
+    // Copies the columns in query order, binary ones as Base64
+    private static final BackupRecordMapper COPY_COLUMNS = (row, record) -> {
+        for (int i = 0; i < record.length; i++) {
+            Object value = row.getObject(i + 1);
+            record[i] = value instanceof byte[] ? Base64.getEncoder().encodeToString((byte[]) value) : value;
+        }
+    };
+
     public DatabaseUtil() throws Exception {
+        this(JDBC_URL);
+    }
+
+    /* Use another database than the default one, such as a temporary database for tests and benchmarks */
+    public DatabaseUtil(String jdbcUrl) throws Exception {
+        this.jdbcUrl = jdbcUrl;
         encryptionHelper = new EncryptionHelper();
     }
 
@@ -61,23 +266,183 @@ public class DatabaseUtil {
 
     /* Attempt to connect to Database with provided credentials */
     public void connectToDatabase() throws SQLException {
-        try {
-            Class.forName(JDBC_DRIVER); // Load the JDBC driver
-            System.out.println("Connecting to database...");
-            connection = DriverManager.getConnection(JDBC_URL, USER, PASS);
-            statement = connection.createStatement();
-            createUserTables();  // Create the necessary tables if they don't exist
-            createInvitationsTable(); // Create the invitations table
-            createHelpItemTable(); // Create the help items table
-            createSpecialAccessGroupTables();
-            System.out.println("Database initialized successfully!");
-        } catch (ClassNotFoundException e) {
-            System.err.println("JDBC Driver not found: " + e.getMessage());
-        }
-    }
-
-    /* Create table for all the users */
-    public  void createUserTables() throws SQLException {
+        connectToDatabase(DEFAULT_POOL_SIZE, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /* Connect with a pool of at most poolSize connections, closing connections idle for longer than idleTimeoutMillis */
+    public void connectToDatabase(int poolSize, long idleTimeoutMillis) throws SQLException {
+        metrics.run("connectToDatabase", () -> {
+            try {
+                Class.forName(JDBC_DRIVER); // Load the JDBC driver
+                System.out.println("Connecting to database...");
+                connectionPool = new ConnectionPool(jdbcUrl, USER, PASS, poolSize, idleTimeoutMillis,
+                        BORROW_TIMEOUT_MILLIS, STATEMENT_CACHE_SIZE);
+                groupKeys = new GroupKeyStore(this::getConnection, encryptionHelper);
+                SchemaMigrator.Result schema = migrateSchema();
+                if (!schema.applied.isEmpty()) {
+                    for (String migration : schema.applied) {
+                        System.out.println("Applied schema migration " + migration);
+                    }
+                    // Query plans only change with the schema, so they are not checked again on every start
+                    for (String warning : checkQueryPlans()) {
+                        System.out.println("Warning: " + warning);
+                    }
+                }
+                System.out.println("Database initialized successfully! (" + schema + ")");
+                // A rotation cut short by a crash or a shutdown carries on where it stopped
+                if (KeyRotationJob.hasUnfinished(this::getConnection)) {
+                    System.out.println("Resuming an unfinished key rotation");
+                    startKeyRotation(DEFAULT_ROTATION_ROWS_PER_SECOND);
+                }
+            } catch (ClassNotFoundException e) {
+                System.err.println("JDBC Driver not found: " + e.getMessage());
+            }
+        });
+        metrics.registerMBeans(jdbcUrl);
+    }
+
+    /* The group key store of the open connection */
+    private GroupKeyStore groupKeys() throws SQLException {
+        if (groupKeys == null) {
+            throw new SQLException("Not connected to the database");
+        }
+        return groupKeys;
+    }
+
+    /* Borrow a connection from the pool, closing it returns it. Nested calls on one thread share the same connection */
+    Connection getConnection() throws SQLException {
+        if (connectionPool == null) {
+            throw new SQLException("Not connected to the database");
+        }
+        return connectionPool.getConnection();
+    }
+
+    /* Connection pool metrics, such as how long callers waited for a connection and statement cache hits */
+    public ConnectionPool.Stats getConnectionPoolStats() {
+        return connectionPool == null ? null : connectionPool.getStats();
+    }
+
+    /* Decrypted article cache metrics, such as its hit rate and the memory it holds */
+    public ArticleCache.Stats getArticleCacheStats() {
+        return articleCache.getStats();
+    }
+
+    // Queries run on every login, lookup or permission check; none of them should scan a whole table
+    private static final String[] HOT_QUERIES = {
+            "SELECT password FROM helpsystem_users WHERE username = ?",
+            "SELECT 1 FROM user_roles WHERE username = ? AND role = ?",
+            "SELECT gp.username FROM group_permissions gp JOIN user_roles r ON r.username = gp.username "
+                    + "AND r.role = 'student' WHERE gp.group_id = ? AND gp.permission_type = 'VIEW'",
+            "SELECT * FROM invitations WHERE code = ?",
+            "SELECT * FROM helpsystem_helpitems WHERE title = ?",
+            "SELECT id, title, level, group_name FROM helpsystem_helpitems WHERE id > ? ORDER BY id LIMIT ?",
+            "SELECT * FROM helpsystem_helpitems WHERE id = ?",
+            "SELECT id, title, level, group_name FROM helpsystem_helpitems WHERE id = ANY(?) ORDER BY id",
+            "DELETE FROM helpsystem_helpitems WHERE title = ?",
+            "SELECT group_id, permission_type FROM group_permissions WHERE username = ?",
+            "SELECT group_id FROM group_permissions WHERE username = ? AND permission_type = 'VIEW'",
+            "SELECT username, permission_type FROM group_permissions WHERE group_id = ?",
+            "SELECT payload, encrypted_content FROM group_articles WHERE group_id = ? AND article_id = ?",
+            "SELECT article_id FROM group_articles WHERE group_id = ?",
+            "SELECT wrapped_key FROM group_keys WHERE group_id = ? AND key_version = ?",
+            "SELECT MAX(key_version) FROM group_keys WHERE group_id = ?",
+            "SELECT article_id, group_id, payload FROM group_articles WHERE (article_id, group_id) > (?, ?) "
+                    + "ORDER BY article_id, group_id LIMIT ?"
+    };
+
+    /**
+     * Ask H2 for the plan of every hot query and report the ones that would scan a whole table,
+     * for example because an index was dropped or a query changed. Runs at startup; an empty list
+     * means every hot query uses an index.
+     */
+    public List<String> checkQueryPlans() throws SQLException {
+        return metrics.record("checkQueryPlans", () -> {
+            List<String> warnings = new ArrayList<>();
+            try (Connection conn = getConnection()) {
+                for (String query : HOT_QUERIES) {
+                    try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN " + query);
+                         ResultSet rs = pstmt.executeQuery()) {
+                        String plan = rs.next() ? rs.getString(1) : "";
+                        if (plan.contains(".tableScan")) {
+                            warnings.add("full table scan in " + query);
+                        }
+                    }
+                }
+            }
+            return warnings;
+        });
+    }
+
+    /* Run a single statement that returns no rows */
+    private void executeStatement(String sql) throws SQLException {
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /* The bus the changes made through this DatabaseUtil are published on */
+    public DatabaseEventBus getEventBus() {
+        return eventBus;
+    }
+
+    /* The metrics recorded for the public methods */
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /* Rows in a result, for the metrics: the size of a list, one for a single row, none for a flag */
+    private static long rowsOf(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        } else if (result instanceof BulkImportResult) {
+            return ((BulkImportResult) result).getRowCount();
+        } else if (result instanceof RestoreResult) {
+            return ((RestoreResult) result).restored;
+        } else if (result instanceof BackupWriter.Stats) {
+            return ((BackupWriter.Stats) result).records;
+        } else if (result instanceof HelpItemPageIndex) {
+            return ((HelpItemPageIndex) result).total;
+        } else if (result instanceof KeyRotationJob.Progress) {
+            return ((KeyRotationJob.Progress) result).processed;
+        } else if (result == null || result instanceof Boolean || result instanceof Number) {
+            return 0;
+        }
+        return 1;
+    }
+
+    public PasswordHasher getPasswordHasher() {
+        return passwordHasher;
+    }
+
+    /* Hash passwords with other settings from now on; the old hasher is closed */
+    public void setPasswordHasher(PasswordHasher hasher) {
+        PasswordHasher old = passwordHasher;
+        passwordHasher = hasher;
+        old.close();
+    }
+
+    /**
+     * The schema changes, oldest first. A database from before schema versioning is at version 0 and
+     * gets all of them; their statements only add what is missing, so they leave its tables intact.
+     */
+    private SchemaMigrator schemaMigrator() {
+        return new SchemaMigrator(this::getConnection)
+                .add(1, "Create the user, invitation, help item and special access group tables", this::createTables)
+                .add(2, "Add the name and email columns to helpsystem_users", this::addUserNameColumns)
+                .add(3, "Index the columns rows are looked up by", this::createLookupIndexes)
+                .add(4, "Store group articles as binary payloads", this::addGroupArticlePayloads)
+                .add(5, "Keep user roles in user_roles", this::createUserRolesTable)
+                .add(6, "Add per-group data keys and key rotation checkpoints", this::createGroupKeyTables);
+    }
+
+    /* Bring the schema up to date; when it already is, this is a single query */
+    public SchemaMigrator.Result migrateSchema() throws SQLException {
+        return metrics.record("migrateSchema", () -> schemaMigrator().migrate());
+    }
+
+    /* Schema version 1 */
+    private void createTables() throws SQLException {
         String userTableQuery = "CREATE TABLE IF NOT EXISTS helpsystem_users ("
                 + "id INT AUTO_INCREMENT PRIMARY KEY, "
                 + "email VARCHAR(255) UNIQUE, "
@@ -88,43 +453,33 @@ public class DatabaseUtil {
                 + "last_name VARCHAR(255), "
                 + "preferred_first_name VARCHAR(255), "
                 + "roles VARCHAR(255))";
-        statement.execute(userTableQuery);
-
-        // Ensure the necessary columns exist
-        String addFirstNameColumnQuery = "ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS first_name VARCHAR(255)";
-        statement.execute(addFirstNameColumnQuery);
-
-        String addMiddleNameColumnQuery = "ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS middle_name VARCHAR(255)";
-        statement.execute(addMiddleNameColumnQuery);
-
-        String addLastNameColumnQuery = "ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS last_name VARCHAR(255)";
-        statement.execute(addLastNameColumnQuery);
-
-        String addPreferredFirstNameColumnQuery = "ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS preferred_first_name VARCHAR(255)";
-        statement.execute(addPreferredFirstNameColumnQuery);
+        executeStatement(userTableQuery);
 
-        String addEmailColumnQuery = "ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS email VARCHAR(255) UNIQUE";
-        statement.execute(addEmailColumnQuery);
-    }
-
-    /* Create table for all the invitations */
-    public void createInvitationsTable() throws SQLException {
-        String createTableQuery = "CREATE TABLE IF NOT EXISTS invitations ("
+        String invitationsTableQuery = "CREATE TABLE IF NOT EXISTS invitations ("
                 + "id INT AUTO_INCREMENT PRIMARY KEY, "
                 + "role VARCHAR(255), "
                 + "code VARCHAR(255))";
-        statement.execute(createTableQuery);
-    }
+        executeStatement(invitationsTableQuery);
+
+        String helpItemTableQuery = "CREATE TABLE IF NOT EXISTS helpsystem_helpitems ("
+                + "title VARCHAR(255), "
+                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "description VARCHAR(255), "
+                + "short_description VARCHAR(255), "
+                + "authors VARCHAR(255), "
+                + "keywords VARCHAR(255), "
+                + "references VARCHAR(255), "
+                + "level VARCHAR(255), "
+                + "group_name VARCHAR(255))";
+        executeStatement(helpItemTableQuery);
 
-    /* Create table for special access group */
-    public void createSpecialAccessGroupTables() throws SQLException {
         // Create the main special access groups table
         String specialAccessGroupsTable = "CREATE TABLE IF NOT EXISTS special_access_groups ("
                 + "group_id INT AUTO_INCREMENT PRIMARY KEY, "
                 + "group_name VARCHAR(255) UNIQUE, "
                 + "created_by VARCHAR(255), "
                 + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
-        statement.execute(specialAccessGroupsTable);
+        executeStatement(specialAccessGroupsTable);
 
         // Create table for encrypted articles in groups
         String groupArticlesTable = "CREATE TABLE IF NOT EXISTS group_articles ("
@@ -133,7 +488,7 @@ public class DatabaseUtil {
                 + "encrypted_content TEXT, "
                 + "PRIMARY KEY (article_id, group_id), "
                 + "FOREIGN KEY (group_id) REFERENCES special_access_groups(group_id))";
-        statement.execute(groupArticlesTable);
+        executeStatement(groupArticlesTable);
 
         // Create table for group permissions
         String groupPermissionsTable = "CREATE TABLE IF NOT EXISTS group_permissions ("
@@ -142,376 +497,1029 @@ public class DatabaseUtil {
                 + "permission_type VARCHAR(50), "  // 'ADMIN' or 'VIEW'
                 + "PRIMARY KEY (group_id, username, permission_type), "
                 + "FOREIGN KEY (group_id) REFERENCES special_access_groups(group_id))";
-        statement.execute(groupPermissionsTable);
+        executeStatement(groupPermissionsTable);
     }
 
-    /* Create a special access group */
-    public void createSpecialAccessGroup(String groupName, String creatorUsername) throws SQLException {
-        String query = "INSERT INTO special_access_groups (group_name, created_by) VALUES (?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, groupName);
-            pstmt.setString(2, creatorUsername);
-            pstmt.executeUpdate();
+    /* Schema version 2: columns user tables created by the first releases lack */
+    private void addUserNameColumns() throws SQLException {
+        executeStatement("ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS first_name VARCHAR(255)");
+        executeStatement("ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS middle_name VARCHAR(255)");
+        executeStatement("ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS last_name VARCHAR(255)");
+        executeStatement("ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS preferred_first_name VARCHAR(255)");
+        executeStatement("ALTER TABLE helpsystem_users ADD COLUMN IF NOT EXISTS email VARCHAR(255) UNIQUE");
+    }
 
-            // Get the generated group ID
-            try (ResultSet rs = pstmt.getGeneratedKeys()) {
-                if (rs.next()) {
-                    int groupId = rs.getInt(1);
-                    // Add creator as both admin and viewer
-                    addGroupPermission(groupId, creatorUsername, "ADMIN");
-                    addGroupPermission(groupId, creatorUsername, "VIEW");
+    /* Schema version 3 */
+    private void createLookupIndexes() throws SQLException {
+        // Invitation codes are looked up on every registration
+        executeStatement("CREATE INDEX IF NOT EXISTS idx_invitations_code ON invitations(code)");
+        // Help items are looked up, updated and deleted by title
+        executeStatement("CREATE INDEX IF NOT EXISTS idx_helpitems_title ON helpsystem_helpitems(title)");
+        // The primary key starts with group_id, lookups by user need their own index
+        executeStatement("CREATE INDEX IF NOT EXISTS idx_group_permissions_user ON group_permissions(username, permission_type)");
+    }
+
+    /* Schema version 4: articles are stored as a binary payload, encrypted_content only holds rows not migrated yet */
+    private void addGroupArticlePayloads() throws SQLException {
+        executeStatement("ALTER TABLE group_articles ADD COLUMN IF NOT EXISTS payload VARBINARY");
+        int migrated = migrateGroupArticlePayloads();
+        if (migrated > 0) {
+            System.out.println("Migrated " + migrated + " group articles to binary payloads");
+        }
+    }
+
+    /* Schema version 5: one row per role of a user, lower case. The roles column is still written for older code */
+    private void createUserRolesTable() throws SQLException {
+        String userRolesTable = "CREATE TABLE IF NOT EXISTS user_roles ("
+                + "username VARCHAR(255), "
+                + "role VARCHAR(50), "
+                + "PRIMARY KEY (username, role))";
+        executeStatement(userRolesTable);
+        executeStatement("CREATE INDEX IF NOT EXISTS idx_user_roles_role ON user_roles(role, username)");
+        int migrated = migrateUserRoles();
+        if (migrated > 0) {
+            System.out.println("Migrated the roles of " + migrated + " users");
+        }
+    }
+
+    /* Schema version 6: every group's data keys, wrapped by the master key, and where key rotations got to */
+    private void createGroupKeyTables() throws SQLException {
+        String groupKeysTable = "CREATE TABLE IF NOT EXISTS group_keys ("
+                + "group_id INT, "
+                + "key_version INT, "
+                + "wrapped_key VARBINARY, "
+                + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                + "PRIMARY KEY (group_id, key_version), "
+                + "FOREIGN KEY (group_id) REFERENCES special_access_groups(group_id))";
+        executeStatement(groupKeysTable);
+
+        String keyRotationJobsTable = "CREATE TABLE IF NOT EXISTS key_rotation_jobs ("
+                + "job_id INT AUTO_INCREMENT PRIMARY KEY, "
+                + "started_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                + "updated_at TIMESTAMP, "
+                + "last_article_id INT, "
+                + "last_group_id INT, "
+                + "processed BIGINT DEFAULT 0, "
+                + "rotated BIGINT DEFAULT 0, "
+                + "finished_at TIMESTAMP)";
+        executeStatement(keyRotationJobsTable);
+    }
+
+    /**
+     * Copy the comma separated roles column into user_roles for every user who has no rows there
+     * yet, such as users created before the table existed. Returns the number of users migrated.
+     */
+    public int migrateUserRoles() throws SQLException {
+        return metrics.record("migrateUserRoles", () -> {
+            String select = "SELECT username, roles FROM helpsystem_users u WHERE roles IS NOT NULL "
+                    + "AND NOT EXISTS (SELECT 1 FROM user_roles r WHERE r.username = u.username)";
+            String insert = "MERGE INTO user_roles (username, role) KEY (username, role) VALUES (?, ?)";
+            int migrated = 0;
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(select);
+                     PreparedStatement pstmt = conn.prepareStatement(insert)) {
+                    while (rs.next()) {
+                        List<String> roles = parseRoles(rs.getString("roles"));
+                        for (String role : roles) {
+                            pstmt.setString(1, rs.getString("username"));
+                            pstmt.setString(2, role);
+                            pstmt.addBatch();
+                        }
+                        if (!roles.isEmpty() && ++migrated % DEFAULT_BATCH_SIZE == 0) {
+                            pstmt.executeBatch();
+                        }
+                    }
+                    pstmt.executeBatch();
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
                 }
             }
+            return migrated;
+        });
+    }
+
+    /* Split a roles column value such as "Admin,Student" into normalized role names */
+    static List<String> parseRoles(String roles) {
+        List<String> parsed = new ArrayList<>();
+        if (roles == null) {
+            return parsed;
+        }
+        for (String role : roles.split(",")) {
+            String normalized = normalizeRole(role);
+            if (!normalized.isEmpty() && !parsed.contains(normalized)) {
+                parsed.add(normalized);
+            }
+        }
+        return parsed;
+    }
+
+    /* Roles are compared case-insensitively, user_roles stores them in lower case */
+    static String normalizeRole(String role) {
+        return role == null ? "" : role.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Convert group articles still stored as "Base64(IV):Base64(ciphertext)" text to the binary
+     * payload format, in batches within one transaction. Returns the number of converted rows.
+     */
+    public int migrateGroupArticlePayloads() throws SQLException {
+        return metrics.record("migrateGroupArticlePayloads", () -> {
+            String select = "SELECT article_id, group_id, encrypted_content FROM group_articles "
+                    + "WHERE payload IS NULL AND encrypted_content IS NOT NULL";
+            String update = "UPDATE group_articles SET payload = ?, encrypted_content = NULL WHERE article_id = ? AND group_id = ?";
+            int migrated = 0;
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(select);
+                     PreparedStatement pstmt = conn.prepareStatement(update)) {
+                    while (rs.next()) {
+                        pstmt.setBytes(1, legacyContentToPayload(rs.getString(3)));
+                        pstmt.setInt(2, rs.getInt(1));
+                        pstmt.setInt(3, rs.getInt(2));
+                        pstmt.addBatch();
+                        if (++migrated % DEFAULT_BATCH_SIZE == 0) {
+                            pstmt.executeBatch();
+                        }
+                    }
+                    pstmt.executeBatch();
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            if (migrated > 0) {
+                articleCache.clear();
+            }
+            return migrated;
+        });
+    }
+
+    /* Turn the old "Base64(IV):Base64(ciphertext)" text form into a binary payload */
+    private static byte[] legacyContentToPayload(String encryptedContent) {
+        String[] parts = encryptedContent.split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Malformed encrypted content");
         }
+        return EncryptedPayload.encode(Base64.getDecoder().decode(parts[0]), Base64.getDecoder().decode(parts[1]));
+    }
+
+    /* Create a special access group */
+    public void createSpecialAccessGroup(String groupName, String creatorUsername) throws SQLException {
+        metrics.run("createSpecialAccessGroup", () -> {
+            String query = "INSERT INTO special_access_groups (group_name, created_by) VALUES (?, ?)";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, groupName);
+                pstmt.setString(2, creatorUsername);
+                pstmt.executeUpdate();
+
+                // Get the generated group ID
+                try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        int groupId = rs.getInt(1);
+                        eventBus.publish(new DatabaseEvent.GroupCreated(groupId, groupName));
+                        // Add creator as both admin and viewer
+                        addGroupPermission(groupId, creatorUsername, "ADMIN");
+                        addGroupPermission(groupId, creatorUsername, "VIEW");
+                    }
+                }
+            }
+        });
     }
 
     /* Add permission to special access group*/
     public  void addGroupPermission(int groupId, String username, String permissionType) throws SQLException {
-        String query = "INSERT INTO group_permissions (group_id, username, permission_type) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            pstmt.setString(2, username);
-            pstmt.setString(3, permissionType);
-            pstmt.executeUpdate();
+        metrics.run("addGroupPermission", () -> {
+            String query = "INSERT INTO group_permissions (group_id, username, permission_type) VALUES (?, ?, ?)";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                pstmt.setString(2, username);
+                pstmt.setString(3, permissionType);
+                pstmt.executeUpdate();
+            }
+            permissionIndex.grant(username, groupId, permissionType);
+            eventBus.publish(new DatabaseEvent.GroupPermissionChanged(groupId, username, permissionType, true));
+        });
+    }
+
+    /* The group permissions of a user, read from the database the first time they are needed */
+    private PermissionIndex.UserPermissions permissionsOf(String username) throws SQLException {
+        PermissionIndex.UserPermissions permissions = permissionIndex.get(username);
+        if (permissions != null) {
+            return permissions;
+        }
+        long generation = permissionIndex.getGeneration();
+        BitSet[] groups = PermissionIndex.newGroupSets();
+        String query = "SELECT group_id, permission_type FROM group_permissions WHERE username = ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    PermissionIndex.Permission permission = PermissionIndex.Permission.of(rs.getString(2));
+                    int groupId = rs.getInt(1);
+                    if (permission != null && groupId >= 0) {
+                        groups[permission.ordinal()].set(groupId);
+                    }
+                }
+            }
         }
+        return permissionIndex.put(username, groups, generation);
     }
 
 
     /* Check if DB is empty */
     public boolean isDBEmpty() throws SQLException {
-        String query = "SELECT COUNT(*) AS count FROM helpsystem_users";
-        ResultSet resultSet = statement.executeQuery(query);
-        if (resultSet.next()) {
-            return resultSet.getInt("count") == 0;
-        }
-        return true;
+        return metrics.record("isDBEmpty", () -> {
+            String query = "SELECT COUNT(*) AS count FROM helpsystem_users";
+            try (Connection conn = getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet resultSet = stmt.executeQuery(query)) {
+                if (resultSet.next()) {
+                    return resultSet.getInt("count") == 0;
+                }
+            }
+            return true;
+        });
     }
 
-    /* Register a new user*/
+    /* Register a new user, only a hash of the password is stored */
     public void register(String username, String password, String role) throws SQLException {
-        String query = "INSERT INTO helpsystem_users ( username, password, roles) VALUES ( ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, username);
-            pstmt.setString(2, password);
-            pstmt.setString(3, role);
-            pstmt.executeUpdate();
-        }
+        metrics.run("register", () -> {
+            String hash = passwordHasher.hash(password);
+            String query = "INSERT INTO helpsystem_users ( username, password, roles) VALUES ( ?, ?, ?)";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, username);
+                pstmt.setString(2, hash);
+                pstmt.setString(3, role);
+                pstmt.executeUpdate();
+                for (String parsed : parseRoles(role)) {
+                    insertUserRole(conn, username, parsed);
+                }
+            }
+            eventBus.publish(new DatabaseEvent.UserAdded(username, role));
+        });
     }
 
-    /* Login */
+    /**
+     * Login. The hash is checked on the password hasher's pool, not in SQL. A password still stored in
+     * plain text, or hashed with other settings than the current ones, is hashed again on success.
+     * Throws PasswordHasher.OverloadedException when too many logins are already waiting.
+     */
     public boolean login(String username, String password) throws SQLException {
-        String query = "SELECT * FROM helpsystem_users WHERE username = ? AND password = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, username);
-            pstmt.setString(2, password);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                return rs.next();
+        return metrics.record("login", () -> {
+            String stored = null;
+            String query = "SELECT password FROM helpsystem_users WHERE username = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, username);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        stored = rs.getString("password");
+                    }
+                }
+            }
+            PasswordHasher hasher = passwordHasher;
+            if (stored == null) {
+                hasher.verifyDummy(password);
+                return false;
             }
+            if (!hasher.verify(password, stored)) {
+                return false;
+            }
+            if (hasher.needsRehash(stored)) {
+                try {
+                    updatePasswordHash(username, stored, hasher.hash(password));
+                } catch (PasswordHasher.OverloadedException e) {
+                    // The login itself succeeded; the hash is upgraded on a later login
+                }
+            }
+            return true;
+        });
+    }
+
+    /* Replace a stored password, unless it changed since it was read */
+    private void updatePasswordHash(String username, String oldValue, String newHash) throws SQLException {
+        String query = "UPDATE helpsystem_users SET password = ? WHERE username = ? AND password = ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, newHash);
+            pstmt.setString(2, username);
+            pstmt.setString(3, oldValue);
+            pstmt.executeUpdate();
         }
     }
 
     /* Invite new user with 1-time code*/
     public void inviteUser(String code, String role) throws SQLException {
-        String query = "INSERT INTO invitations ( role, code) VALUES ( ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, role);
-            pstmt.setString(2, code);
-            pstmt.executeUpdate();
-        }
-        System.out.println("Invitation code: " + code);
+        metrics.run("inviteUser", () -> {
+            String query = "INSERT INTO invitations ( role, code) VALUES ( ?, ?)";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, role);
+                pstmt.setString(2, code);
+                pstmt.executeUpdate();
+            }
+            System.out.println("Invitation code: " + code);
+        });
     }
 
     /* Use invitation code */
     public boolean useInvitationCode(String code, String username, String password) throws SQLException {
-        String query = "SELECT * FROM invitations WHERE code = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, code);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    String email = rs.getString("email");
-                    String role = rs.getString("role");
-                    register(username, password, role);
-                    deleteInvitationCode(code);
-                    return true;
+        return metrics.record("useInvitationCode", () -> {
+            String query = "SELECT * FROM invitations WHERE code = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, code);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        String email = rs.getString("email");
+                        String role = rs.getString("role");
+                        register(username, password, role);
+                        deleteInvitationCode(code);
+                        return true;
+                    }
                 }
             }
-        }
-        return false;
+            return false;
+        });
     }
 
     /* Delete invitation code */
     public void deleteInvitationCode(String code) throws SQLException {
-        String query = "DELETE FROM invitations WHERE code = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, code);
-            pstmt.executeUpdate();
-        }
+        metrics.run("deleteInvitationCode", () -> {
+            String query = "DELETE FROM invitations WHERE code = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, code);
+                pstmt.executeUpdate();
+            }
+        });
     }
 
     /* Get user by username */
     public User getUserByUsername(String username) throws SQLException {
-        String query = "SELECT * FROM helpsystem_users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, username);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return new User(rs.getString("username"), rs.getString("password"), rs.getString("roles"));
+        return metrics.record("getUserByUsername", () -> {
+            String query = "SELECT * FROM helpsystem_users WHERE username = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, username);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return new User(rs.getString("username"), rs.getString("password"), rs.getString("roles"));
+                    }
                 }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
     /* Reset user account */
     public void resetUserAccount(String username, String oneTimePassword, Timestamp expiration) throws SQLException {
-        String query = "UPDATE helpsystem_users SET one_time_password = ?, expiration = ? WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, oneTimePassword);
-            pstmt.setTimestamp(2, expiration);
-            pstmt.setString(3, username);
-            pstmt.executeUpdate();
-        }
+        metrics.run("resetUserAccount", () -> {
+            String query = "UPDATE helpsystem_users SET one_time_password = ?, expiration = ? WHERE username = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, oneTimePassword);
+                pstmt.setTimestamp(2, expiration);
+                pstmt.setString(3, username);
+                pstmt.executeUpdate();
+            }
+        });
     }
 
-    /* Delete user account */
+    /* Delete user account; the user row and its user_roles rows go in one transaction */
     public void deleteUserAccount(String username) throws SQLException {
-        String query = "DELETE FROM helpsystem_users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, username);
-            pstmt.executeUpdate();
-        }
+        metrics.run("deleteUserAccount", () -> {
+            String query = "DELETE FROM helpsystem_users WHERE username = ?";
+            String deleteRoles = "DELETE FROM user_roles WHERE username = ?";
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(query);
+                     PreparedStatement delete = conn.prepareStatement(deleteRoles)) {
+                    pstmt.setString(1, username);
+                    pstmt.executeUpdate();
+                    delete.setString(1, username);
+                    delete.executeUpdate();
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            eventBus.publish(new DatabaseEvent.UserDeleted(username));
+        });
     }
 
-    /* Add new roles to user */
+    /* Add new roles to user; the roles column and user_roles change in one transaction */
     public void addRoleToUser(String username, String role) throws SQLException {
-        String query = "UPDATE helpsystem_users SET roles = CONCAT(roles, ?) WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, "," + role);
-            pstmt.setString(2, username);
-            pstmt.executeUpdate();
-        }
+        metrics.run("addRoleToUser", () -> {
+            String query = "UPDATE helpsystem_users SET roles = CONCAT(roles, ?) WHERE username = ?";
+            List<String> added = parseRoles(role);
+            int updated;
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    pstmt.setString(1, "," + role);
+                    pstmt.setString(2, username);
+                    updated = pstmt.executeUpdate();
+                    if (updated > 0) {
+                        for (String parsed : added) {
+                            insertUserRole(conn, username, parsed);
+                        }
+                    }
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            if (updated > 0) {
+                for (String parsed : added) {
+                    eventBus.publish(new DatabaseEvent.UserRoleChanged(username, parsed, true));
+                }
+            }
+        });
     }
 
-    /* Remove role for user */
+    /* Remove role for user; the roles column and user_roles change in one transaction */
     public void removeRoleFromUser(String username, String role) throws SQLException {
-        String query = "UPDATE helpsystem_users SET roles = REPLACE(roles, ?, '') WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, role);
-            pstmt.setString(2, username);
+        metrics.run("removeRoleFromUser", () -> {
+            String query = "UPDATE helpsystem_users SET roles = REPLACE(roles, ?, '') WHERE username = ?";
+            String deleteRole = "DELETE FROM user_roles WHERE username = ? AND role = ?";
+            int updated;
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(query);
+                     PreparedStatement delete = conn.prepareStatement(deleteRole)) {
+                    pstmt.setString(1, role);
+                    pstmt.setString(2, username);
+                    pstmt.executeUpdate();
+                    delete.setString(1, username);
+                    delete.setString(2, normalizeRole(role));
+                    updated = delete.executeUpdate();
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            if (updated > 0) {
+                eventBus.publish(new DatabaseEvent.UserRoleChanged(username, normalizeRole(role), false));
+            }
+        });
+    }
+
+    /* Record a role in user_roles on the caller's connection, doing nothing if the user already has it */
+    private static void insertUserRole(Connection conn, String username, String role) throws SQLException {
+        String query = "MERGE INTO user_roles (username, role) KEY (username, role) VALUES (?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, role);
             pstmt.executeUpdate();
         }
     }
 
+    /* Check a role of a user with a primary key lookup; the role is not case-sensitive */
+    public boolean hasRole(String username, String role) throws SQLException {
+        return metrics.record("hasRole", () -> {
+            String query = "SELECT 1 FROM user_roles WHERE username = ? AND role = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, username);
+                pstmt.setString(2, normalizeRole(role));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        });
+    }
+
+    /* All roles of a user, in lower case */
+    public List<String> getUserRoles(String username) throws SQLException {
+        return metrics.record("getUserRoles", () -> {
+            List<String> roles = new ArrayList<>();
+            String query = "SELECT role FROM user_roles WHERE username = ? ORDER BY role";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, username);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        roles.add(rs.getString("role"));
+                    }
+                }
+            }
+            return roles;
+        });
+    }
+
 
     /* List all users */
     public List<User> listUserAccounts() throws SQLException {
-        List<User> users = new ArrayList<>();
-        String query = "SELECT * FROM helpsystem_users";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-            while (rs.next()) {
-                User user = new User(rs.getString("username"), rs.getString("password"), rs.getString("roles"));
-                users.add(user);
+        return metrics.record("listUserAccounts", () -> {
+            List<User> users = new ArrayList<>();
+            String query = "SELECT * FROM helpsystem_users";
+            try (Connection conn = getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                while (rs.next()) {
+                    User user = new User(rs.getString("username"), rs.getString("password"), rs.getString("roles"));
+                    users.add(user);
+                }
             }
-        }
-        return users;
+            return users;
+        });
     }
 
 
     /* Check if the user exists */
     public boolean doesUserExist(String username) {
-        String query = "SELECT COUNT(*) FROM helpsystem_users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
+        return metrics.record("doesUserExist", () -> {
+            String query = "SELECT COUNT(*) FROM helpsystem_users WHERE username = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, username);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    return rs.getInt(1) > 0;
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return false;
+            return false;
+        });
     }
 
     /*Check if the invitation code is valid */
     public boolean isValidInvitationCode(String code) throws SQLException {
-        String query = "SELECT COUNT(*) FROM invitations WHERE code = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, code);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
+        return metrics.record("isValidInvitationCode", () -> {
+            String query = "SELECT COUNT(*) FROM invitations WHERE code = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, code);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getInt(1) > 0;
+                    }
                 }
             }
-        }
-        return false;
+            return false;
+        });
     }
 
     /* Invalidate invitation code */
     public void invalidateInvitationCode(String code) throws SQLException {
-        String query = "DELETE FROM invitations WHERE code = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, code);
-            stmt.executeUpdate();
-        }
+        metrics.run("invalidateInvitationCode", () -> {
+            String query = "DELETE FROM invitations WHERE code = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, code);
+                stmt.executeUpdate();
+            }
+        });
     }
 
 
     /*  Update user details */
     public void updateUserDetails(String username, String email, String firstName, String middleName, String lastName, String preferredFirstName) throws SQLException {
-        String query = "UPDATE helpsystem_users SET email = ?, first_name = ?, middle_name = ?, last_name = ?, preferred_first_name = ? WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, email);
-            pstmt.setString(2, firstName);
-            pstmt.setString(3, middleName);
-            pstmt.setString(4, lastName);
-            pstmt.setString(5, preferredFirstName);
-            pstmt.setString(6, username);
-            pstmt.executeUpdate();
-        }
+        metrics.run("updateUserDetails", () -> {
+            String query = "UPDATE helpsystem_users SET email = ?, first_name = ?, middle_name = ?, last_name = ?, preferred_first_name = ? WHERE username = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, email);
+                pstmt.setString(2, firstName);
+                pstmt.setString(3, middleName);
+                pstmt.setString(4, lastName);
+                pstmt.setString(5, preferredFirstName);
+                pstmt.setString(6, username);
+                pstmt.executeUpdate();
+            }
+            eventBus.publish(new DatabaseEvent.UserUpdated(username));
+        });
     }
 
     /* Get user by username */
     public void resetUserDatabase() throws SQLException {
-        String dropUserTableQuery = "DROP TABLE IF EXISTS helpsystem_users";
-        statement.execute(dropUserTableQuery);
-        createUserTables();  // Recreate the tables
+        metrics.run("resetUserDatabase", () -> {
+            // Emptied rather than dropped and created again, so the schema stays at its version
+            executeStatement("TRUNCATE TABLE helpsystem_users RESTART IDENTITY");
+            executeStatement("TRUNCATE TABLE user_roles");
+            eventBus.publish(new DatabaseEvent.UsersReset());
+        });
+    }
+
+    /* Get user by username */
+    public void resetInvitationDatabase() throws SQLException {
+        metrics.run("resetInvitationDatabase", () -> {
+            executeStatement("TRUNCATE TABLE invitations RESTART IDENTITY");
+        });
+    }
+
+
+    /* Shut down DB */
+    public void closeConnection() {
+        stopKeyRotation();
+        metrics.unregisterMBeans();
+        if (connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+        groupKeys = null;
+    }
+
+
+    /* Get all help items */
+    public List<helpItem> getAllHelpItems() throws SQLException {
+        return metrics.record("getAllHelpItems", () -> {
+            String query = "SELECT * FROM helpsystem_helpitems";
+            // create list of help items
+            List<helpItem> helpItems = new ArrayList<>();
+            try (Connection conn = getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                while (rs.next()) {
+                    helpItem helpItem = new helpItem(
+                            rs.getInt("id"),
+                            rs.getString("title"),
+                            rs.getString("description"),
+                            rs.getString("short_description"),
+                            rs.getString("authors"),
+                            rs.getString("keywords"),
+                            rs.getString("references"),
+                            rs.getString("level"),
+                            rs.getString("group_name"));
+                    helpItems.add(helpItem);
+                }
+            }
+            return helpItems;
+        });
+    }
+
+    /* Get a help item by its id, or null if there is none */
+    public helpItem getHelpItemById(int id) throws SQLException {
+        return metrics.record("getHelpItemById", () -> {
+            String query = "SELECT * FROM helpsystem_helpitems WHERE id = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return new helpItem(
+                                rs.getInt("id"),
+                                rs.getString("title"),
+                                rs.getString("description"),
+                                rs.getString("short_description"),
+                                rs.getString("authors"),
+                                rs.getString("keywords"),
+                                rs.getString("references"),
+                                rs.getString("level"),
+                                rs.getString("group_name"));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /* The list columns of the help items with the given ids, in id order, in one primary key lookup per id */
+    public List<HelpItemSummary> getHelpItemSummaries(Collection<Integer> ids) throws SQLException {
+        return metrics.record("getHelpItemSummaries", () -> {
+            List<HelpItemSummary> summaries = new ArrayList<>(ids.size());
+            if (ids.isEmpty()) {
+                return summaries;
+            }
+            String query = "SELECT id, title, level, group_name FROM helpsystem_helpitems WHERE id = ANY(?) ORDER BY id";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setArray(1, conn.createArrayOf("INTEGER", ids.toArray()));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        summaries.add(new HelpItemSummary(rs.getInt("id"), rs.getString("title"), rs.getString("level"), rs.getString("group_name")));
+                    }
+                }
+            }
+            return summaries;
+        });
+    }
+
+    /* The first limit help items with an id above afterId, in id order; pass 0 for the first page */
+    public List<HelpItemSummary> getHelpItemPage(int afterId, int limit) throws SQLException {
+        return getHelpItemPage(afterId, limit, null);
+    }
+
+    /**
+     * Keyset paging over the help items: the next page starts right after the last id of the page
+     * before, so every page is a primary key range read no matter how deep it is. Only the columns a
+     * list shows are read. When titleFilter is not empty only titles containing it are returned,
+     * ignoring case.
+     */
+    public List<HelpItemSummary> getHelpItemPage(int afterId, int limit, String titleFilter) throws SQLException {
+        return metrics.record("getHelpItemPage", () -> {
+            boolean filtered = titleFilter != null && !titleFilter.isEmpty();
+            String query = "SELECT id, title, level, group_name FROM helpsystem_helpitems WHERE id > ? "
+                    + (filtered ? "AND LOWER(title) LIKE ? ESCAPE '\\' " : "")
+                    + "ORDER BY id LIMIT ?";
+            List<HelpItemSummary> page = new ArrayList<>(limit);
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                int parameter = 1;
+                pstmt.setInt(parameter++, afterId);
+                if (filtered) {
+                    pstmt.setString(parameter++, containsPattern(titleFilter));
+                }
+                pstmt.setInt(parameter, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        page.add(new HelpItemSummary(rs.getInt("id"), rs.getString("title"), rs.getString("level"), rs.getString("group_name")));
+                    }
+                }
+            }
+            return page;
+        });
+    }
+
+    /**
+     * Find where every page of help items starts, so a list can fetch any page by keyset without
+     * reading the pages before it. Only the id column is read.
+     */
+    public HelpItemPageIndex getHelpItemPageIndex(int pageSize, String titleFilter) throws SQLException {
+        return metrics.record("getHelpItemPageIndex", () -> {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("Page size must be at least 1");
+            }
+            boolean filtered = titleFilter != null && !titleFilter.isEmpty();
+            String query = "SELECT id FROM helpsystem_helpitems "
+                    + (filtered ? "WHERE LOWER(title) LIKE ? ESCAPE '\\' " : "")
+                    + "ORDER BY id";
+            List<Integer> firstIds = new ArrayList<>();
+            int total = 0;
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                if (filtered) {
+                    pstmt.setString(1, containsPattern(titleFilter));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (total++ % pageSize == 0) {
+                            firstIds.add(rs.getInt(1));
+                        }
+                    }
+                }
+            }
+            int[] ids = new int[firstIds.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = firstIds.get(i);
+            }
+            return new HelpItemPageIndex(pageSize, total, ids);
+        });
+    }
+
+    /* LIKE pattern matching any text that contains the given text, ignoring case */
+    private static String containsPattern(String text) {
+        String escaped = text.toLowerCase(Locale.ROOT).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    /* Add new help item */
+    public void addHelpItem(String title, String description, String shortDescription, String author, String keyword, String reference, String level, String group_name) throws SQLException {
+        metrics.run("addHelpItem", () -> {
+            String query = "INSERT INTO helpsystem_helpitems (title, description, short_description, authors, keywords, references, level, group_name) VALUES (?, ?, ?, ?, ?, ?, ?,?)";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, title);
+                pstmt.setString(2, description);
+                pstmt.setString(3, shortDescription);
+                pstmt.setString(4, author);
+                pstmt.setString(5, keyword);
+                pstmt.setString(6, reference);
+                pstmt.setString(7, level);
+                pstmt.setString(8, group_name);
+                pstmt.executeUpdate();
+
+                // Keep the search index in sync with the new row
+                try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        helpItem added = new helpItem(rs.getInt(1), title, description, shortDescription, author, keyword, reference, level, group_name);
+                        synchronized (searchIndex) {
+                            if (searchIndexLoaded) {
+                                searchIndex.add(added);
+                            }
+                        }
+                        eventBus.publish(new DatabaseEvent.HelpItemAdded(added));
+                    }
+                }
+            }
+        });
     }
 
-    /* Get user by username */
-    public void resetInvitationDatabase() throws SQLException {
-        String dropInvitationQuery = "DROP TABLE IF EXISTS invitations";
-        statement.execute(dropInvitationQuery);
-        createInvitationsTable();  // Recreate the tables
+    /* Bulk import help items with the default batch size */
+    public BulkImportResult addHelpItems(Iterable<helpItem> items) throws SQLException {
+        return addHelpItems(items, DEFAULT_BATCH_SIZE);
     }
 
-
-    /* Shut down DB */
-    public void closeConnection() {
-        try {
-            if (statement != null) statement.close();
-        } catch (SQLException se2) {
-            se2.printStackTrace();
-        }
-        try {
-            if (connection != null) connection.close();
-        } catch (SQLException se) {
-            se.printStackTrace();
-        }
+    /* Bulk import a stream of help items, batchSize rows per JDBC batch and transaction */
+    public BulkImportResult addHelpItems(Stream<helpItem> items, int batchSize) throws SQLException {
+        return addHelpItems(items::iterator, batchSize);
     }
 
+    /**
+     * Bulk import help items. Rows are sent in JDBC batches of batchSize and every batch is committed
+     * in its own transaction, so a failure only rolls back the batch it happened in; the batches before
+     * it stay imported. The ids of the help items are ignored, the database assigns new ones.
+     */
+    public BulkImportResult addHelpItems(Iterable<helpItem> items, int batchSize) throws SQLException {
+        return addHelpItems(items, batchSize, ProgressListener.NONE);
+    }
 
-    /* Create table for all the help items */
-    public void createHelpItemTable() throws SQLException {
-        String helpItemTableQuery = "CREATE TABLE IF NOT EXISTS helpsystem_helpitems ("
-                + "title VARCHAR(255), "
-                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
-                + "description VARCHAR(255), "
-                + "short_description VARCHAR(255), "
-                + "authors VARCHAR(255), "
-                + "keywords VARCHAR(255), "
-                + "references VARCHAR(255), "
-                + "level VARCHAR(255), "
-                + "group_name VARCHAR(255))";
-        statement.execute(helpItemTableQuery);
+    /* Bulk import help items, reporting the number of rows imported after every batch */
+    public BulkImportResult addHelpItems(Iterable<helpItem> items, int batchSize, ProgressListener progress) throws SQLException {
+        return metrics.record("addHelpItems", () -> {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be at least 1");
+            }
+            String query = "INSERT INTO helpsystem_helpitems (title, description, short_description, authors, keywords, references, level, group_name) VALUES (?, ?, ?, ?, ?, ?, ?,?)";
+            long start = System.nanoTime();
+            List<Integer> ids = new ArrayList<>();
+            long total = items instanceof Collection ? ((Collection<helpItem>) items).size() : -1;
+
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                    List<helpItem> chunk = new ArrayList<>(batchSize);
+                    Iterator<helpItem> it = items.iterator();
+                    while (it.hasNext()) {
+                        helpItem item = it.next();
+                        pstmt.setString(1, item.getTitle());
+                        pstmt.setString(2, item.getDescription());
+                        pstmt.setString(3, item.getShortDescription());
+                        pstmt.setString(4, item.getAuthors());
+                        pstmt.setString(5, item.getKeywords());
+                        pstmt.setString(6, item.getReferences());
+                        pstmt.setString(7, item.getLevel());
+                        pstmt.setString(8, item.getGroup());
+                        pstmt.addBatch();
+                        chunk.add(item);
+                        if (chunk.size() == batchSize) {
+                            flushHelpItemBatch(conn, pstmt, chunk, ids);
+                            progress.onProgress(ids.size(), total);
+                        }
+                    }
+                    if (!chunk.isEmpty()) {
+                        flushHelpItemBatch(conn, pstmt, chunk, ids);
+                    }
+                    progress.onProgress(ids.size(), total);
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                    if (!ids.isEmpty()) {
+                        eventBus.publish(new DatabaseEvent.HelpItemsReplaced());
+                    }
+                }
+            }
+            return new BulkImportResult(ids, System.nanoTime() - start);
+        });
     }
 
-    /* Get all help items */
-    public List<helpItem> getAllHelpItems() throws SQLException {
-        String query = "SELECT * FROM helpsystem_helpitems";
-        // create list of help items
-        List<helpItem> helpItems = new ArrayList<>();
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+    /* Send one batch of inserts, commit it and record the generated ids */
+    private void flushHelpItemBatch(Connection conn, PreparedStatement pstmt, List<helpItem> chunk, List<Integer> ids) throws SQLException {
+        pstmt.executeBatch();
+        List<Integer> chunkIds = new ArrayList<>(chunk.size());
+        try (ResultSet rs = pstmt.getGeneratedKeys()) {
             while (rs.next()) {
-                helpItem helpItem = new helpItem(
-                        rs.getInt("id"),
-                        rs.getString("title"),
-                        rs.getString("description"),
-                        rs.getString("short_description"),
-                        rs.getString("authors"),
-                        rs.getString("keywords"),
-                        rs.getString("references"),
-                        rs.getString("level"),
-                        rs.getString("group_name"));
-                helpItems.add(helpItem);
+                chunkIds.add(rs.getInt(1));
             }
         }
-        return helpItems;
-    }
-
-    /* Add new help item */
-    public void addHelpItem(String title, String description, String shortDescription, String author, String keyword, String reference, String level, String group_name) throws SQLException {
-        String query = "INSERT INTO helpsystem_helpitems (title, description, short_description, authors, keywords, references, level, group_name) VALUES (?, ?, ?, ?, ?, ?, ?,?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, title);
-            pstmt.setString(2, description);
-            pstmt.setString(3, shortDescription);
-            pstmt.setString(4, author);
-            pstmt.setString(5, keyword);
-            pstmt.setString(6, reference);
-            pstmt.setString(7, level);
-            pstmt.setString(8, group_name);
-            pstmt.executeUpdate();
+        conn.commit();
+        ids.addAll(chunkIds);
+
+        synchronized (searchIndex) {
+            if (searchIndexLoaded) {
+                for (int i = 0; i < chunk.size() && i < chunkIds.size(); i++) {
+                    helpItem item = chunk.get(i);
+                    searchIndex.add(new helpItem(chunkIds.get(i), item.getTitle(), item.getDescription(), item.getShortDescription(),
+                            item.getAuthors(), item.getKeywords(), item.getReferences(), item.getLevel(), item.getGroup()));
+                }
+            }
         }
+        chunk.clear();
     }
 
     /* Reset help item database */
     public void resetHelpItemDatabase() throws SQLException {
-        String dropHelpItemTableQuery = "DROP TABLE IF EXISTS helpsystem_helpitems";
-        statement.execute(dropHelpItemTableQuery);
-        createHelpItemTable();  // Recreate the tables
+        metrics.run("resetHelpItemDatabase", () -> {
+            executeStatement("TRUNCATE TABLE helpsystem_helpitems RESTART IDENTITY");
+            synchronized (searchIndex) {
+                searchIndex.clear();
+            }
+            eventBus.publish(new DatabaseEvent.HelpItemsReplaced());
+        });
+    }
+
+    /* Get the search index over the help items, built from the table the first time it is needed */
+    public HelpItemSearchIndex getSearchIndex() throws SQLException {
+        return metrics.record("getSearchIndex", () -> {
+            synchronized (searchIndex) {
+                if (!searchIndexLoaded) {
+                    searchIndex.rebuild(getAllHelpItems());
+                    searchIndexLoaded = true;
+                }
+            }
+            return searchIndex;
+        });
     }
 
     /* Get help item by title */
     public helpItem getHelpItem(String title) {
-        String query = "SELECT * FROM helpsystem_helpitems WHERE title = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, title);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return new helpItem(
-                            rs.getInt("id"),
-                            rs.getString("title"),
-                            rs.getString("description"),
-                            rs.getString("short_description"),
-                            rs.getString("authors"),
-                            rs.getString("keywords"),
-                            rs.getString("references"),
-                            rs.getString("level"),
-                            rs.getString("group_name"));
+        return metrics.record("getHelpItem", () -> {
+            String query = "SELECT * FROM helpsystem_helpitems WHERE title = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, title);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return new helpItem(
+                                rs.getInt("id"),
+                                rs.getString("title"),
+                                rs.getString("description"),
+                                rs.getString("short_description"),
+                                rs.getString("authors"),
+                                rs.getString("keywords"),
+                                rs.getString("references"),
+                                rs.getString("level"),
+                                rs.getString("group_name"));
+                    }
                 }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+            return null;
+        });
     }
 
     /* delete item by id */
     public void deleteHelpItem(String title) throws SQLException {
-        String query = "DELETE FROM helpsystem_helpitems WHERE title = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, title);
-            pstmt.executeUpdate();
-        }
+        metrics.run("deleteHelpItem", () -> {
+            String query = "DELETE FROM helpsystem_helpitems WHERE title = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, title);
+                pstmt.executeUpdate();
+            }
+            synchronized (searchIndex) {
+                if (searchIndexLoaded) {
+                    searchIndex.removeByTitle(title);
+                }
+            }
+            eventBus.publish(new DatabaseEvent.HelpItemDeleted(title));
+        });
     }
 
     /* Update item by id */
     public void updateHelpItem(Integer id, helpItem newItem) throws SQLException {
-        String query = "UPDATE helpsystem_helpitems SET title = ?, description = ?, short_description = ?, authors = ?, keywords = ?, references = ?, level = ?, group_name = ? WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, newItem.getTitle());
-            pstmt.setString(2, newItem.getDescription());
-            pstmt.setString(3, newItem.getShortDescription());
-            pstmt.setString(4, newItem.getAuthors());
-            pstmt.setString(5, newItem.getKeywords());
-            pstmt.setString(6, newItem.getReferences());
-            pstmt.setString(7, newItem.getLevel());
-            pstmt.setString(8, newItem.getGroup());
-            pstmt.setInt(9, id);
-            pstmt.executeUpdate();
-        }
+        metrics.run("updateHelpItem", () -> {
+            String query = "UPDATE helpsystem_helpitems SET title = ?, description = ?, short_description = ?, authors = ?, keywords = ?, references = ?, level = ?, group_name = ? WHERE id = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, newItem.getTitle());
+                pstmt.setString(2, newItem.getDescription());
+                pstmt.setString(3, newItem.getShortDescription());
+                pstmt.setString(4, newItem.getAuthors());
+                pstmt.setString(5, newItem.getKeywords());
+                pstmt.setString(6, newItem.getReferences());
+                pstmt.setString(7, newItem.getLevel());
+                pstmt.setString(8, newItem.getGroup());
+                pstmt.setInt(9, id);
+                pstmt.executeUpdate();
+            }
+            helpItem updated = new helpItem(id, newItem.getTitle(), newItem.getDescription(), newItem.getShortDescription(),
+                    newItem.getAuthors(), newItem.getKeywords(), newItem.getReferences(), newItem.getLevel(), newItem.getGroup());
+            synchronized (searchIndex) {
+                if (searchIndexLoaded) {
+                    searchIndex.update(updated);
+                }
+            }
+            eventBus.publish(new DatabaseEvent.HelpItemUpdated(updated));
+        });
     }
 
 
@@ -519,395 +1527,879 @@ public class DatabaseUtil {
 
     /**** ADD ARTICLE TO SPECIAL ACCESS GROUP *****/
     public void addArticleToGroup(int groupId, int articleId, String content) throws Exception {
-        // Convert content to bytes and get IV
-        byte[] contentBytes = EncryptionUtils.toByteArray(content.toCharArray());
-        byte[] iv = EncryptionUtils.getInitializationVector(content.toCharArray());
-
-        // Encrypt the content using existing encryptionHelper
-        byte[] encryptedBytes = encryptionHelper.encrypt(contentBytes, iv);
-
-        // Store both IV and encrypted content in Base64 format
-        String encryptedContent = Base64.getEncoder().encodeToString(iv) +
-                ":" +
-                Base64.getEncoder().encodeToString(encryptedBytes);
-
-        String query = "INSERT INTO group_articles (article_id, group_id, encrypted_content) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, articleId);
-            pstmt.setInt(2, groupId);
-            pstmt.setString(3, encryptedContent);
-            pstmt.executeUpdate();
-        }
+        metrics.run("addArticleToGroup", () -> {
+            byte[] contentBytes = EncryptionUtils.toByteArray(content.toCharArray());
+
+            // Encrypt with AES/GCM under the group's latest data key; the payload records the key version and nonce
+            byte[] payload = groupKeys().current(groupId).encrypt(contentBytes);
+
+            String query = "INSERT INTO group_articles (article_id, group_id, payload) VALUES (?, ?, ?)";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, articleId);
+                pstmt.setInt(2, groupId);
+                pstmt.setBytes(3, payload);
+                pstmt.executeUpdate();
+            }
+            // The article was encrypted anew, never serve an older decrypted copy
+            articleCache.invalidate(groupId, articleId);
+            eventBus.publish(new DatabaseEvent.GroupArticleChanged(groupId, articleId, true));
+        });
     }
 
     /**** GET SPECIAL ACCESS GROUP  DETAILS*****/
     public Map<String, Object> getGroupDetails(int groupId) throws SQLException {
-        Map<String, Object> groupDetails = new HashMap<>();
-        String query = "SELECT * FROM special_access_groups WHERE group_id = ?";
-
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    groupDetails.put("group_id", rs.getInt("group_id"));
-                    groupDetails.put("group_name", rs.getString("group_name"));
-                    groupDetails.put("created_by", rs.getString("created_by"));
-                    groupDetails.put("created_at", rs.getTimestamp("created_at"));
-                    groupDetails.put("admins", getGroupAdmins(groupId));
-                    groupDetails.put("viewers", getGroupViewers(groupId));
-                    groupDetails.put("articles", getGroupArticles(groupId));
+        return metrics.record("getGroupDetails", () -> {
+            Map<String, Object> groupDetails = new HashMap<>();
+            String query = "SELECT * FROM special_access_groups WHERE group_id = ?";
+
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        groupDetails.put("group_id", rs.getInt("group_id"));
+                        groupDetails.put("group_name", rs.getString("group_name"));
+                        groupDetails.put("created_by", rs.getString("created_by"));
+                        groupDetails.put("created_at", rs.getTimestamp("created_at"));
+                        // Admins and viewers come from one query instead of one each
+                        List<String> admins = new ArrayList<>();
+                        List<String> viewers = new ArrayList<>();
+                        getGroupMembers(groupId, admins, viewers);
+                        groupDetails.put("admins", admins);
+                        groupDetails.put("viewers", viewers);
+                        groupDetails.put("articles", getGroupArticles(groupId));
+                    }
                 }
             }
-        }
-        return groupDetails;
+            return groupDetails;
+        });
     }
 
     /**** GET ARTICLE CONTENT*****/
     public String getGroupArticleContent(int groupId, int articleId, String username) throws Exception {
-        // First check if user has permission
-        if (!hasViewPermission(groupId, username)) {
-            throw new SecurityException("User does not have permission to view this article");
+        return metrics.record("getGroupArticleContent", () -> {
+            // First check if user has permission
+            if (!hasViewPermission(groupId, username)) {
+                throw new SecurityException("User does not have permission to view this article");
+            }
+
+            // Permissions were checked for this user above, the decrypted text itself can be shared
+            String cached = articleCache.get(groupId, articleId);
+            if (cached != null) {
+                return cached;
+            }
+            long generation = articleCache.getGeneration();
+
+            String query = "SELECT payload, encrypted_content FROM group_articles WHERE group_id = ? AND article_id = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                pstmt.setInt(2, articleId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        byte[] decryptedBytes;
+                        try (InputStream payload = rs.getBinaryStream("payload")) {
+                            if (payload != null) {
+                                decryptedBytes = decryptPayload(groupId, payload);
+                            } else {
+                                // Row written before the binary payload existed and not migrated yet
+                                String[] parts = rs.getString("encrypted_content").split(":");
+                                decryptedBytes = encryptionHelper.decrypt(Base64.getDecoder().decode(parts[1]), Base64.getDecoder().decode(parts[0]));
+                            }
+                        }
+                        String content = new String(decryptedBytes, Charset.defaultCharset());
+                        articleCache.put(groupId, articleId, content, generation);
+                        return content;
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /* Read the header, then feed the rest of the payload to the cipher and key its version names */
+    private byte[] decryptPayload(int groupId, InputStream payload) throws Exception {
+        EncryptedPayload header = EncryptedPayload.readHeader(payload);
+        switch (header.getVersion()) {
+            case EncryptedPayload.VERSION_GROUP_KEY:
+                return groupKeys().get(groupId, header.getKeyVersion())
+                        .decrypt(payload, header.getCipherTextLength(), header.getInitializationVector());
+            case EncryptedPayload.VERSION_GCM:
+                return encryptionHelper.decryptGcm(payload, header.getCipherTextLength(), header.getInitializationVector());
+            case EncryptedPayload.VERSION:
+                return encryptionHelper.decrypt(payload, header.getCipherTextLength(), header.getInitializationVector());
+            default:
+                throw new IOException("Unsupported payload version " + header.getVersion());
         }
+    }
 
-        String query = "SELECT encrypted_content FROM group_articles WHERE group_id = ? AND article_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            pstmt.setInt(2, articleId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    String encryptedContent = rs.getString("encrypted_content");
+    /* For KeyRotationJob: the payload encrypted again under the group's latest key, null if it already is */
+    private byte[] reencryptPayload(int groupId, byte[] payload) throws Exception {
+        if (payload == null) {
+            // Still in the old text form; migrateGroupArticlePayloads converts it first
+            return null;
+        }
+        GroupKeyStore.GroupKey key = groupKeys().current(groupId);
+        EncryptedPayload header = EncryptedPayload.readHeader(new ByteArrayInputStream(payload));
+        if (header.getVersion() == EncryptedPayload.VERSION_GROUP_KEY && header.getKeyVersion() == key.version) {
+            return null;
+        }
+        return key.encrypt(decryptPayload(groupId, new ByteArrayInputStream(payload)));
+    }
 
-                    // Split the stored string to get IV and encrypted content
-                    String[] parts = encryptedContent.split(":");
-                    byte[] iv = Base64.getDecoder().decode(parts[0]);
-                    byte[] encrypted = Base64.getDecoder().decode(parts[1]);
+    /* Give a group a new data key for the articles written from now on; startKeyRotation moves the others to it */
+    public int rotateGroupKey(int groupId) throws SQLException {
+        return metrics.record("rotateGroupKey", () -> groupKeys().rotate(groupId).version);
+    }
 
-                    // Decrypt using existing encryptionHelper
-                    byte[] decryptedBytes = encryptionHelper.decrypt(encrypted, iv);
-                    return new String(EncryptionUtils.toCharArray(decryptedBytes));
+    /**
+     * Start re-encrypting, in the background, every group article that is not under its group's
+     * latest data key, at most maxRowsPerSecond a second (0 for no limit). Articles stay readable
+     * throughout. An unfinished rotation is resumed, and if one is running already its future is
+     * returned. The future completes with the final progress once every article was checked.
+     */
+    public CompletableFuture<KeyRotationJob.Progress> startKeyRotation(int maxRowsPerSecond) throws SQLException {
+        return metrics.record("startKeyRotation", () -> {
+            synchronized (keyRotationLock) {
+                if (keyRotation != null && !keyRotation.isDone()) {
+                    return keyRotation;
                 }
+                if (connectionPool == null) {
+                    throw new SQLException("Not connected to the database");
+                }
+                KeyRotationJob job = new KeyRotationJob(this::getConnection, this::reencryptPayload,
+                        KeyRotationJob.DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors(), maxRowsPerSecond);
+                CompletableFuture<KeyRotationJob.Progress> result = new CompletableFuture<>();
+                Thread thread = new Thread(() -> {
+                    try {
+                        result.complete(job.run());
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                }, "key-rotation");
+                thread.setDaemon(true);
+                keyRotationJob = job;
+                keyRotation = result;
+                thread.start();
+                return result;
             }
+        });
+    }
+
+    /* Progress of the key rotation started last, null if none was started since connecting */
+    public KeyRotationJob.Progress getKeyRotationProgress() {
+        synchronized (keyRotationLock) {
+            return keyRotationJob == null ? null : keyRotationJob.getProgress();
+        }
+    }
+
+    /* Stop a running key rotation after its current chunk and wait for it; starting again resumes it */
+    public void stopKeyRotation() {
+        KeyRotationJob job;
+        CompletableFuture<KeyRotationJob.Progress> running;
+        synchronized (keyRotationLock) {
+            job = keyRotationJob;
+            running = keyRotation;
+        }
+        if (job == null || running.isDone()) {
+            return;
+        }
+        job.stop();
+        try {
+            running.get(ROTATION_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Key rotation did not stop cleanly: " + e);
         }
-        return null;
     }
 
     /**** CHECK IF A USER HAS VIEW PERMISSION *****/
     public  boolean hasViewPermission(int groupId, String username) throws SQLException {
-        String query = "SELECT 1 FROM group_permissions WHERE group_id = ? AND username = ? "
-                + "AND permission_type = 'VIEW'";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            pstmt.setString(2, username);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                return rs.next();
-            }
-        }
+        return metrics.record("hasViewPermission", () -> {
+            return permissionsOf(username).has(PermissionIndex.Permission.VIEW, groupId);
+        });
     }
 
     /**** ADD INSTRUCTOR TO GROUP WITH A DEFAULT RIGHT *****/
     public void addInstructorToGroup(int groupId, String username) throws SQLException {
-        // Instructors by default only get VIEW permission, not ADMIN
-        if (!hasViewPermission(groupId, username)) {
-            addGroupPermission(groupId, username, "VIEW");
-        }
+        metrics.run("addInstructorToGroup", () -> {
+            // Instructors by default only get VIEW permission, not ADMIN
+            if (!hasViewPermission(groupId, username)) {
+                addGroupPermission(groupId, username, "VIEW");
+            }
+        });
     }
 
     /**** ADD FIRST INSTRUCTOR WITH FULL RIGHT*****/
     public void addFirstInstructor(int groupId, String username) throws SQLException {
-        // Check if this is the first instructor
-        if (getGroupAdmins(groupId).isEmpty()) {
-            // First instructor gets both admin and view rights
-            addGroupPermission(groupId, username, "ADMIN");
-            addGroupPermission(groupId, username, "VIEW");
-        } else {
-            // Not first instructor, add with default rights
-            addInstructorToGroup(groupId, username);
-        }
+        metrics.run("addFirstInstructor", () -> {
+            // Check if this is the first instructor
+            if (getGroupAdmins(groupId).isEmpty()) {
+                // First instructor gets both admin and view rights
+                addGroupPermission(groupId, username, "ADMIN");
+                addGroupPermission(groupId, username, "VIEW");
+            } else {
+                // Not first instructor, add with default rights
+                addInstructorToGroup(groupId, username);
+            }
+        });
     }
 
     /**** ADD A STUDENT TO SPECIAL ACCESS GROUP *****/
     public void addStudentToGroup(int groupId, String username) throws SQLException {
-        // Students only get VIEW permission
-        if (!hasViewPermission(groupId, username)) {
-            addGroupPermission(groupId, username, "VIEW");
-        }
+        metrics.run("addStudentToGroup", () -> {
+            // Students only get VIEW permission
+            if (!hasViewPermission(groupId, username)) {
+                addGroupPermission(groupId, username, "VIEW");
+            }
+        });
     }
 
     /**** GET ALL STUDENTS FROM A GROUP *****/
     public List<String> getGroupStudents(int groupId) throws SQLException {
-        List<String> students = new ArrayList<>();
-        String query = "SELECT username FROM group_permissions gp " +
-                "JOIN helpsystem_users u ON gp.username = u.username " +
-                "WHERE group_id = ? AND permission_type = 'VIEW' " +
-                "AND u.roles LIKE '%student%'";
-
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    students.add(rs.getString("username"));
+        return metrics.record("getGroupStudents", () -> {
+            List<String> students = new ArrayList<>();
+            // Both sides of the join are primary key lookups: the group's viewers, then their student role
+            String query = "SELECT gp.username FROM group_permissions gp " +
+                    "JOIN user_roles r ON r.username = gp.username AND r.role = 'student' " +
+                    "WHERE gp.group_id = ? AND gp.permission_type = 'VIEW'";
+
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        students.add(rs.getString("username"));
+                    }
                 }
             }
-        }
-        return students;
+            return students;
+        });
     }
 
     /**** ADD ADMIN TO SPECIAL ACCESS GROUP *****/
     public void addAdminToGroup(int groupId, String username) throws SQLException {
-        // Check if user already has admin permission
-        if (!hasAdminPermission(groupId, username)) {
-            addGroupPermission(groupId, username, "ADMIN");
-        }
+        metrics.run("addAdminToGroup", () -> {
+            // Check if user already has admin permission
+            if (!hasAdminPermission(groupId, username)) {
+                addGroupPermission(groupId, username, "ADMIN");
+            }
+        });
     }
 
     /**** ADD VIEWER TO SPECIAL ACCESS GROUP *****/
     public void addViewerToGroup(int groupId, String username) throws SQLException {
-        // Check if user already has view permission
-        if (!hasViewPermission(groupId, username)) {
-            addGroupPermission(groupId, username, "VIEW");
-        }
+        metrics.run("addViewerToGroup", () -> {
+            // Check if user already has view permission
+            if (!hasViewPermission(groupId, username)) {
+                addGroupPermission(groupId, username, "VIEW");
+            }
+        });
     }
 
     /**** REMOVE ADMIN TO SPECIAL ACCESS GROUP *****/
     public void removeAdminFromGroup(int groupId, String username) throws SQLException {
-        String query = "DELETE FROM group_permissions WHERE group_id = ? AND username = ? AND permission_type = 'ADMIN'";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            pstmt.setString(2, username);
-            pstmt.executeUpdate();
-        }
+        metrics.run("removeAdminFromGroup", () -> {
+            String query = "DELETE FROM group_permissions WHERE group_id = ? AND username = ? AND permission_type = 'ADMIN'";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                pstmt.setString(2, username);
+                pstmt.executeUpdate();
+            }
+            permissionIndex.revoke(username, groupId, "ADMIN");
+            eventBus.publish(new DatabaseEvent.GroupPermissionChanged(groupId, username, "ADMIN", false));
+        });
     }
 
     /**** REMOVE VIEWER FROM SPECIAL ACCESS GROUP *****/
     public void removeViewerFromGroup(int groupId, String username) throws SQLException {
-        String query = "DELETE FROM group_permissions WHERE group_id = ? AND username = ? AND permission_type = 'VIEW'";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            pstmt.setString(2, username);
-            pstmt.executeUpdate();
-        }
+        metrics.run("removeViewerFromGroup", () -> {
+            String query = "DELETE FROM group_permissions WHERE group_id = ? AND username = ? AND permission_type = 'VIEW'";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                pstmt.setString(2, username);
+                pstmt.executeUpdate();
+            }
+            permissionIndex.revoke(username, groupId, "VIEW");
+            eventBus.publish(new DatabaseEvent.GroupPermissionChanged(groupId, username, "VIEW", false));
+        });
     }
 
     /**** CHECK IF USER HAS ADMIN PERMISSION *****/
     public boolean hasAdminPermission(int groupId, String username) throws SQLException {
-        String query = "SELECT 1 FROM group_permissions WHERE group_id = ? AND username = ? AND permission_type = 'ADMIN'";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        return metrics.record("hasAdminPermission", () -> {
+            return permissionsOf(username).has(PermissionIndex.Permission.ADMIN, groupId);
+        });
+    }
+
+    /* Fill in the admins and viewers of a group with a single query */
+    private void getGroupMembers(int groupId, List<String> admins, List<String> viewers) throws SQLException {
+        String query = "SELECT username, permission_type FROM group_permissions WHERE group_id = ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setInt(1, groupId);
-            pstmt.setString(2, username);
             try (ResultSet rs = pstmt.executeQuery()) {
-                return rs.next();
+                while (rs.next()) {
+                    String permissionType = rs.getString("permission_type");
+                    if ("ADMIN".equals(permissionType)) {
+                        admins.add(rs.getString("username"));
+                    } else if ("VIEW".equals(permissionType)) {
+                        viewers.add(rs.getString("username"));
+                    }
+                }
             }
         }
     }
 
     /**** GET ALL ADMINS FOR A GROUP *****/
     public List<String> getGroupAdmins(int groupId) throws SQLException {
-        List<String> admins = new ArrayList<>();
-        String query = "SELECT username FROM group_permissions WHERE group_id = ? AND permission_type = 'ADMIN'";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    admins.add(rs.getString("username"));
+        return metrics.record("getGroupAdmins", () -> {
+            List<String> admins = new ArrayList<>();
+            String query = "SELECT username FROM group_permissions WHERE group_id = ? AND permission_type = 'ADMIN'";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        admins.add(rs.getString("username"));
+                    }
                 }
             }
-        }
-        return admins;
+            return admins;
+        });
     }
 
     /**** GET ALL VIEWERS FROM A GROUP *****/
     public List<String> getGroupViewers(int groupId) throws SQLException {
-        List<String> viewers = new ArrayList<>();
-        String query = "SELECT username FROM group_permissions WHERE group_id = ? AND permission_type = 'VIEW'";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    viewers.add(rs.getString("username"));
+        return metrics.record("getGroupViewers", () -> {
+            List<String> viewers = new ArrayList<>();
+            String query = "SELECT username FROM group_permissions WHERE group_id = ? AND permission_type = 'VIEW'";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        viewers.add(rs.getString("username"));
+                    }
                 }
             }
-        }
-        return viewers;
+            return viewers;
+        });
     }
 
     /**** GET ADMIN FOR ALL GROUP WHERE USER HAS ADMIN PERMISSION *****/
     public List<Integer> getUserAdminGroups(String username) throws SQLException {
-        List<Integer> groups = new ArrayList<>();
-        String query = "SELECT group_id FROM group_permissions WHERE username = ? AND permission_type = 'ADMIN'";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, username);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    groups.add(rs.getInt("group_id"));
-                }
-            }
-        }
-        return groups;
+        return metrics.record("getUserAdminGroups", () -> {
+            return permissionsOf(username).groupIds(PermissionIndex.Permission.ADMIN);
+        });
     }
 
     /**** GET ADMIN FOR ALL GROUP WHERE USER HAS VIEW PERMISSION *****/
     public List<Integer> getUserViewGroups(String username) throws SQLException {
-        List<Integer> groups = new ArrayList<>();
-        String query = "SELECT group_id FROM group_permissions WHERE username = ? AND permission_type = 'VIEW'";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, username);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    groups.add(rs.getInt("group_id"));
-                }
-            }
-        }
-        return groups;
+        return metrics.record("getUserViewGroups", () -> {
+            return permissionsOf(username).groupIds(PermissionIndex.Permission.VIEW);
+        });
     }
 
     /* Get all special access groups */
     public List<Map<String, Object>> getAllSpecialAccessGroups() throws SQLException {
-        List<Map<String, Object>> groups = new ArrayList<>();
-        String query = "SELECT * FROM special_access_groups";
+        return metrics.record("getAllSpecialAccessGroups", () -> {
+            List<Map<String, Object>> groups = new ArrayList<>();
+            String query = "SELECT * FROM special_access_groups";
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-            while (rs.next()) {
-                Map<String, Object> group = new HashMap<>();
-                group.put("group_id", rs.getInt("group_id"));
-                group.put("group_name", rs.getString("group_name"));
-                group.put("created_by", rs.getString("created_by"));
-                group.put("created_at", rs.getTimestamp("created_at"));
-                groups.add(group);
+            try (Connection conn = getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                while (rs.next()) {
+                    Map<String, Object> group = new HashMap<>();
+                    group.put("group_id", rs.getInt("group_id"));
+                    group.put("group_name", rs.getString("group_name"));
+                    group.put("created_by", rs.getString("created_by"));
+                    group.put("created_at", rs.getTimestamp("created_at"));
+                    groups.add(group);
+                }
             }
-        }
-        return groups;
+            return groups;
+        });
     }
 
 
     /**** GET ALL ARTICLES IN A GROUP *****/
     public List<Integer> getGroupArticles(int groupId) throws SQLException {
-        List<Integer> articles = new ArrayList<>();
-        String query = "SELECT article_id FROM group_articles WHERE group_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    articles.add(rs.getInt("article_id"));
+        return metrics.record("getGroupArticles", () -> {
+            List<Integer> articles = new ArrayList<>();
+            String query = "SELECT article_id FROM group_articles WHERE group_id = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        articles.add(rs.getInt("article_id"));
+                    }
                 }
             }
-        }
-        return articles;
+            return articles;
+        });
     }
 
     /**** REMOVE AN ARTICLE FROM A GROUP *****/
     public void removeArticleFromGroup(int groupId, int articleId) throws SQLException {
-        String query = "DELETE FROM group_articles WHERE group_id = ? AND article_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, groupId);
-            pstmt.setInt(2, articleId);
-            pstmt.executeUpdate();
-        }
+        metrics.run("removeArticleFromGroup", () -> {
+            String query = "DELETE FROM group_articles WHERE group_id = ? AND article_id = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setInt(1, groupId);
+                pstmt.setInt(2, articleId);
+                pstmt.executeUpdate();
+            }
+            articleCache.invalidate(groupId, articleId);
+            eventBus.publish(new DatabaseEvent.GroupArticleChanged(groupId, articleId, false));
+        });
     }
 
     /**** DELETE A SPECIAL ACCESS GROUP *****/
     public void deleteSpecialAccessGroup(int groupId) throws SQLException {
-        // First delete all permissions
-        String deletePermissions = "DELETE FROM group_permissions WHERE group_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(deletePermissions)) {
-            pstmt.setInt(1, groupId);
-            pstmt.executeUpdate();
-        }
-
-        // Then delete all articles
-        String deleteArticles = "DELETE FROM group_articles WHERE group_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(deleteArticles)) {
-            pstmt.setInt(1, groupId);
-            pstmt.executeUpdate();
-        }
-
-        // Finally delete the group
-        String deleteGroup = "DELETE FROM special_access_groups WHERE group_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(deleteGroup)) {
-            pstmt.setInt(1, groupId);
-            pstmt.executeUpdate();
-        }
+        metrics.run("deleteSpecialAccessGroup", () -> {
+            // First delete all permissions
+            String deletePermissions = "DELETE FROM group_permissions WHERE group_id = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(deletePermissions)) {
+                pstmt.setInt(1, groupId);
+                pstmt.executeUpdate();
+            }
+            permissionIndex.removeGroup(groupId);
+
+            // Then delete all articles
+            String deleteArticles = "DELETE FROM group_articles WHERE group_id = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(deleteArticles)) {
+                pstmt.setInt(1, groupId);
+                pstmt.executeUpdate();
+            }
+            articleCache.invalidateGroup(groupId);
+
+            // And the group's keys, nothing is encrypted with them any more
+            String deleteKeys = "DELETE FROM group_keys WHERE group_id = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(deleteKeys)) {
+                pstmt.setInt(1, groupId);
+                pstmt.executeUpdate();
+            }
+            groupKeys().removeGroup(groupId);
+
+            // Finally delete the group
+            String deleteGroup = "DELETE FROM special_access_groups WHERE group_id = ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(deleteGroup)) {
+                pstmt.setInt(1, groupId);
+                pstmt.executeUpdate();
+            }
+            eventBus.publish(new DatabaseEvent.GroupDeleted(groupId));
+        });
     }
 
     /* Check if user is an instructor */
     public boolean isInstructor(String username) throws SQLException {
-        String query = "SELECT roles FROM helpsystem_users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, username);
+        return metrics.record("isInstructor", () -> {
+            return hasRole(username, "instructor");
+        });
+    }
+
+    /**** CHECK IF A USER IS A STUDENT *****/
+    public boolean isStudent(String username) throws SQLException {
+        return metrics.record("isStudent", () -> {
+            return hasRole(username, "student");
+        });
+    }
+
+    /**
+     * Backup encrypted information into a file
+     */
+    public void backupHelpItemsToFile(String fileName) throws SQLException, IOException, Exception {
+        BackupWriter.Stats stats = backupHelpItemsToFile(fileName, fileName.endsWith(".gz"));
+        System.out.println("Backed up articles: " + stats);
+    }
+
+    // Rows fetched from the database at a time while streaming a backup
+    private static final int BACKUP_FETCH_SIZE = 1000;
+
+    /**
+     * Stream every help item into a backup file, optionally gzip compressed. The first record names
+     * the table and format version, the second lists the columns, then one record per help item.
+     * Rows are read through a forward-only cursor, so memory use does not depend on the table size.
+     */
+    public BackupWriter.Stats backupHelpItemsToFile(String fileName, boolean compress) throws SQLException, IOException {
+        return backupHelpItemsToFile(fileName, compress, ProgressListener.NONE);
+    }
+
+    /* Back up the help items, reporting the number of rows written out of the rows in the table */
+    public BackupWriter.Stats backupHelpItemsToFile(String fileName, boolean compress, ProgressListener progress) throws SQLException, IOException {
+        return metrics.recordIO("backupHelpItemsToFile", () -> {
+            return backupTableToFile(fileName, compress, "helpsystem_helpitems", HELP_ITEM_BACKUP_COLUMNS, "id", progress);
+        });
+    }
+
+    /**
+     * Backup specials  access items into a file
+     */
+    public void backupSpecialAccessItemsToFile(String fileName) throws SQLException, IOException, Exception {
+        BackupWriter.Stats stats = backupSpecialAccessItemsToFile(fileName, fileName.endsWith(".gz"));
+        System.out.println("Backed up special access articles: " + stats);
+    }
+
+    /* Stream the encrypted group articles into a backup file, in the same format as the help item backup */
+    public BackupWriter.Stats backupSpecialAccessItemsToFile(String fileName, boolean compress) throws SQLException, IOException {
+        return backupSpecialAccessItemsToFile(fileName, compress, ProgressListener.NONE);
+    }
+
+    /* Back up the group articles, reporting the number of rows written out of the rows in the table */
+    public BackupWriter.Stats backupSpecialAccessItemsToFile(String fileName, boolean compress, ProgressListener progress) throws SQLException, IOException {
+        return metrics.recordIO("backupSpecialAccessItemsToFile", () -> {
+            String query = "SELECT article_id, group_id, payload FROM group_articles ORDER BY group_id, article_id";
+            // groupId << 32 | key version -> wrapped key, the same few keys serve many articles
+            Map<Long, byte[]> wrappedKeys = new HashMap<>();
+            return backupQueryToFile(fileName, compress, "group_articles", SPECIAL_ACCESS_BACKUP_COLUMNS, query, (row, record) -> {
+                int groupId = row.getInt(2);
+                byte[] payload = row.getBytes(3);
+                int keyVersion = payloadKeyVersion(payload);
+                byte[] wrappedKey = keyVersion > 0 ? wrappedGroupKey(groupId, keyVersion, wrappedKeys) : null;
+                record[0] = row.getInt(1);
+                record[1] = groupId;
+                record[2] = payload == null ? null : Base64.getEncoder().encodeToString(payload);
+                record[3] = wrappedKey == null ? null : keyVersion;
+                record[4] = wrappedKey == null ? null : Base64.getEncoder().encodeToString(wrappedKey);
+            }, progress);
+        });
+    }
+
+    /* The stored wrapped form of a group key version, null if there is none */
+    private byte[] wrappedGroupKey(int groupId, int keyVersion, Map<Long, byte[]> known) throws SQLException {
+        long slot = (long) groupId << 32 | keyVersion;
+        if (known.containsKey(slot)) {
+            return known.get(slot);
+        }
+        byte[] wrapped = null;
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT wrapped_key FROM group_keys WHERE group_id = ? AND key_version = ?")) {
+            pstmt.setInt(1, groupId);
+            pstmt.setInt(2, keyVersion);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getString("roles").contains("instructor");
+                    wrapped = rs.getBytes(1);
                 }
             }
         }
-        return false;
+        known.put(slot, wrapped);
+        return wrapped;
     }
 
-    /**** CHECK IF A USER IS A STUDENT *****/
-    public boolean isStudent(String username) throws SQLException {
-        String query = "SELECT roles FROM helpsystem_users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, username);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("roles").contains("student");
+    /* The group key version a payload is encrypted under, 0 for a payload under the master key, -1 if it cannot be read */
+    private static int payloadKeyVersion(byte[] payload) {
+        if (payload == null) {
+            return 0;
+        }
+        try {
+            return EncryptedPayload.readHeader(new ByteArrayInputStream(payload)).getKeyVersion();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /* Write the header, the column names and every row of the table in key order */
+    private BackupWriter.Stats backupTableToFile(String fileName, boolean compress, String table, String[] columns, String orderBy,
+                                                 ProgressListener progress) throws SQLException, IOException {
+        String query = "SELECT " + String.join(", ", columns) + " FROM " + table + " ORDER BY " + orderBy;
+        return backupQueryToFile(fileName, compress, table, columns, query, COPY_COLUMNS, progress);
+    }
+
+    /* Write the header, the column names and a record made by the mapper for every row of the query */
+    private BackupWriter.Stats backupQueryToFile(String fileName, boolean compress, String table, String[] columns, String query,
+                                                 BackupRecordMapper mapper, ProgressListener progress) throws SQLException, IOException {
+        try (Connection conn = getConnection()) {
+            long total = -1;
+            if (progress != ProgressListener.NONE) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                    rs.next();
+                    total = rs.getLong(1);
+                }
+            }
+            // Let H2 hand out rows as they are read instead of building the whole result first
+            try (Statement lazy = conn.createStatement()) {
+                lazy.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                 BackupWriter writer = new BackupWriter(Paths.get(fileName), compress)) {
+                stmt.setFetchSize(BACKUP_FETCH_SIZE);
+                writer.writeRecord(BACKUP_HEADER, BACKUP_VERSION, table);
+                writer.writeRecord((Object[]) columns);
+                Object[] row = new Object[columns.length];
+                long written = 0;
+                try (ResultSet resultSet = stmt.executeQuery(query)) {
+                    while (resultSet.next()) {
+                        mapper.map(resultSet, row);
+                        writer.writeRecord(row);
+                        if (++written % BACKUP_FETCH_SIZE == 0) {
+                            progress.onProgress(written, total);
+                        }
+                    }
+                }
+                progress.onProgress(written, total);
+                writer.finish();
+                return writer.getStats();
+            } finally {
+                try (Statement lazy = conn.createStatement()) {
+                    lazy.execute("SET LAZY_QUERY_EXECUTION FALSE");
                 }
             }
         }
-        return false;
     }
 
     /**
-     * Backup encrypted information into a file
+     * Check the header of a backup file and map the expected columns to their position in the
+     * file, so a restore does not depend on the column order the backup was written with.
      */
-    public void backupHelpItemsToFile(String fileName) throws SQLException, IOException, Exception {
-        String query = "SELECT * FROM helpsystem_helpitems";
+    private static int[] readBackupHeader(BackupReader reader, String table, String[] columns) throws IOException {
+        List<String> names = readBackupColumns(reader, table);
+        int[] positions = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            positions[i] = names.indexOf(columns[i]);
+            if (positions[i] < 0) {
+                throw new IOException("Backup is missing the column " + columns[i]);
+            }
+        }
+        return positions;
+    }
+
+    /* Check the header of a backup file and return the column names it lists */
+    private static List<String> readBackupColumns(BackupReader reader, String table) throws IOException {
+        String[] header = reader.readRecord();
+        if (header == null || header.length < 3 || !BACKUP_HEADER.equals(header[0])) {
+            throw new IOException("Not a help system backup file");
+        }
+        if (!String.valueOf(BACKUP_VERSION).equals(header[1])) {
+            throw new IOException("Unsupported backup version " + header[1]);
+        }
+        if (!table.equals(header[2])) {
+            throw new IOException("Backup holds " + header[2] + ", expected " + table);
+        }
+        String[] columnRecord = reader.readRecord();
+        if (columnRecord == null) {
+            throw new IOException("Backup file has no column list");
+        }
+        return Arrays.asList(columnRecord);
+    }
 
-        try (ResultSet resultSet = statement.executeQuery(query);
-             FileWriter writer = new FileWriter(fileName)) {
+    /* Restore help items from a backup file written by backupHelpItemsToFile */
+    public RestoreResult restoreHelpItemsFromFile(String fileName, RestoreMode mode) throws SQLException, IOException {
+        return restoreHelpItemsFromFile(fileName, mode, ProgressListener.NONE);
+    }
 
-            while (resultSet.next()) {
-                String title = resultSet.getString("title");
-                String description = resultSet.getString("description");
-                String short_description = resultSet.getString("short_description");
-                String authors = resultSet.getString("authors");
-                String references = resultSet.getString("references");
+    /* Restore help items, reporting the bytes of the backup file read so far out of its size */
+    public RestoreResult restoreHelpItemsFromFile(String fileName, RestoreMode mode, ProgressListener progress) throws SQLException, IOException {
+        return metrics.recordIO("restoreHelpItemsFromFile", () -> {
+            String query = "INSERT INTO helpsystem_helpitems (id, title, description, short_description, authors, keywords, references, level, group_name) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            long start = System.nanoTime();
+            long[] counts = new long[2]; // restored, skipped
+
+            try (BackupReader reader = new BackupReader(Paths.get(fileName));
+                 Connection conn = getConnection()) {
+                int[] at = readBackupHeader(reader, "helpsystem_helpitems", HELP_ITEM_BACKUP_COLUMNS);
+                // Rows already in the table or restored earlier in this file; titles only count in MERGE mode
+                Set<Integer> ids = new HashSet<>();
+                Set<String> titles = new HashSet<>();
+
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    try (Statement stmt = conn.createStatement()) {
+                        if (mode == RestoreMode.REPLACE) {
+                            stmt.executeUpdate("DELETE FROM helpsystem_helpitems");
+                        } else {
+                            try (ResultSet rs = stmt.executeQuery("SELECT id, title FROM helpsystem_helpitems")) {
+                                while (rs.next()) {
+                                    ids.add(rs.getInt(1));
+                                    titles.add(rs.getString(2));
+                                }
+                            }
+                        }
+                    }
+
+                    reader.forEachChunk(DEFAULT_BATCH_SIZE, RESTORE_WORKERS,
+                            fields -> new helpItem(Integer.valueOf(fields[at[0]]), fields[at[1]], fields[at[2]], fields[at[3]],
+                                    fields[at[4]], fields[at[5]], fields[at[6]], fields[at[7]], fields[at[8]]),
+                            chunk -> {
+                                for (helpItem item : chunk) {
+                                    boolean duplicateTitle = mode == RestoreMode.MERGE && item.getTitle() != null && !titles.add(item.getTitle());
+                                    if (duplicateTitle || !ids.add(item.getId())) {
+                                        counts[1]++;
+                                        continue;
+                                    }
+                                    pstmt.setInt(1, item.getId());
+                                    pstmt.setString(2, item.getTitle());
+                                    pstmt.setString(3, item.getDescription());
+                                    pstmt.setString(4, item.getShortDescription());
+                                    pstmt.setString(5, item.getAuthors());
+                                    pstmt.setString(6, item.getKeywords());
+                                    pstmt.setString(7, item.getReferences());
+                                    pstmt.setString(8, item.getLevel());
+                                    pstmt.setString(9, item.getGroup());
+                                    pstmt.addBatch();
+                                    counts[0]++;
+                                }
+                                pstmt.executeBatch();
+                                progress.onProgress(reader.getBytesRead(), reader.getFileSize());
+                            });
+                    conn.commit();
+                    progress.onProgress(reader.getFileSize(), reader.getFileSize());
+                } catch (SQLException | IOException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
 
-                writer.write(resultSet.getInt("id") + ",");
-                writer.write(title + ",");
-                writer.write(description + ",");
-                writer.write(short_description + ",");
-                writer.write(authors + ",");
-                writer.write(references + "\n");
+                // The rows came in with their own ids, move the generator past them
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM helpsystem_helpitems")) {
+                    rs.next();
+                    long next = rs.getLong(1);
+                    stmt.execute("ALTER TABLE helpsystem_helpitems ALTER COLUMN id RESTART WITH " + next);
+                }
             }
-        } catch (SQLException | IOException e) {
-            System.out.println("Error backing up articles.");
-            e.printStackTrace();
-        }
+
+            synchronized (searchIndex) {
+                if (searchIndexLoaded) {
+                    searchIndex.rebuild(getAllHelpItems());
+                }
+            }
+            eventBus.publish(new DatabaseEvent.HelpItemsReplaced());
+            return new RestoreResult(counts[0], counts[1], System.nanoTime() - start);
+        });
     }
 
     /**
-     * Backup specials  access items into a file
+     * Restore group articles from a backup file written by backupSpecialAccessItemsToFile. The groups
+     * themselves are not part of the backup, articles of groups that no longer exist are skipped. The
+     * group keys the articles are encrypted with are, and a key the database does not have is restored
+     * with them. An article is skipped if its key is neither in the database nor in the backup, or if
+     * the database holds a different key under the same version, as it could not be decrypted.
      */
-    public void backupSpecialAccessItemsToFile(String fileName) throws SQLException, IOException, Exception {
-        String query = "SELECT * FROM group_articles";
+    public RestoreResult restoreSpecialAccessItemsFromFile(String fileName, RestoreMode mode) throws SQLException, IOException {
+        return restoreSpecialAccessItemsFromFile(fileName, mode, ProgressListener.NONE);
+    }
 
-        try (ResultSet resultSet = statement.executeQuery(query);
-             FileWriter writer = new FileWriter(fileName)) {
-            while(resultSet.next()) {
-                String articleId = resultSet.getString("article_id");
-                String groupId = resultSet.getString("group_id");
-                String encryptedContent = resultSet.getString("encrypted_content");
-                writer.write(articleId + ",");
-                writer.write(groupId + ",");
-                writer.write(encryptedContent + ",");
+    /* Restore group articles, reporting the bytes of the backup file read so far out of its size */
+    public RestoreResult restoreSpecialAccessItemsFromFile(String fileName, RestoreMode mode, ProgressListener progress) throws SQLException, IOException {
+        return metrics.recordIO("restoreSpecialAccessItemsFromFile", () -> {
+            String query = "INSERT INTO group_articles (article_id, group_id, payload) VALUES (?, ?, ?)";
+            String insertKey = "INSERT INTO group_keys (group_id, key_version, wrapped_key) VALUES (?, ?, ?)";
+            long start = System.nanoTime();
+            long[] counts = new long[2]; // restored, skipped
+
+            try (BackupReader reader = new BackupReader(Paths.get(fileName));
+                 Connection conn = getConnection()) {
+                List<String> names = readBackupColumns(reader, "group_articles");
+                int articleAt = names.indexOf("article_id");
+                int groupAt = names.indexOf("group_id");
+                // Backups taken before the binary payload hold the old text form instead
+                int payloadAt = names.indexOf("payload");
+                int legacyAt = names.indexOf("encrypted_content");
+                if (articleAt < 0 || groupAt < 0 || (payloadAt < 0 && legacyAt < 0)) {
+                    throw new IOException("Backup is missing group article columns");
+                }
+                // Backups taken before group keys were backed up have no key columns
+                int wrappedKeyAt = names.indexOf("wrapped_key");
+                Set<Integer> groups = new HashSet<>();
+                // groupId << 32 | key version -> wrapped key, of the keys in the table or restored from this file
+                Map<Long, byte[]> groupKeyRows = new HashMap<>();
+                // article_id:group_id of the rows already in the table or restored earlier in this file
+                Set<String> keys = new HashSet<>();
+
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(query);
+                     PreparedStatement keyStmt = conn.prepareStatement(insertKey)) {
+                    try (Statement stmt = conn.createStatement()) {
+                        try (ResultSet rs = stmt.executeQuery("SELECT group_id FROM special_access_groups")) {
+                            while (rs.next()) {
+                                groups.add(rs.getInt(1));
+                            }
+                        }
+                        try (ResultSet rs = stmt.executeQuery("SELECT group_id, key_version, wrapped_key FROM group_keys")) {
+                            while (rs.next()) {
+                                groupKeyRows.put((long) rs.getInt(1) << 32 | rs.getInt(2), rs.getBytes(3));
+                            }
+                        }
+                        if (mode == RestoreMode.REPLACE) {
+                            stmt.executeUpdate("DELETE FROM group_articles");
+                        } else {
+                            try (ResultSet rs = stmt.executeQuery("SELECT article_id, group_id FROM group_articles")) {
+                                while (rs.next()) {
+                                    keys.add(rs.getInt(1) + ":" + rs.getInt(2));
+                                }
+                            }
+                        }
+                    }
+
+                    reader.forEachChunk(DEFAULT_BATCH_SIZE, RESTORE_WORKERS,
+                            fields -> new GroupArticleRow(Integer.parseInt(fields[articleAt]), Integer.parseInt(fields[groupAt]),
+                                    payloadAt >= 0 ? Base64.getDecoder().decode(fields[payloadAt]) : legacyContentToPayload(fields[legacyAt]),
+                                    wrappedKeyAt >= 0 && fields[wrappedKeyAt] != null ? Base64.getDecoder().decode(fields[wrappedKeyAt]) : null),
+                            chunk -> {
+                                for (GroupArticleRow row : chunk) {
+                                    if (!groups.contains(row.groupId) || !restoreGroupKey(row, groupKeyRows, keyStmt)
+                                            || !keys.add(row.articleId + ":" + row.groupId)) {
+                                        counts[1]++;
+                                        continue;
+                                    }
+                                    pstmt.setInt(1, row.articleId);
+                                    pstmt.setInt(2, row.groupId);
+                                    pstmt.setBytes(3, row.payload);
+                                    pstmt.addBatch();
+                                    counts[0]++;
+                                }
+                                pstmt.executeBatch();
+                                progress.onProgress(reader.getBytesRead(), reader.getFileSize());
+                            });
+                    conn.commit();
+                    progress.onProgress(reader.getFileSize(), reader.getFileSize());
+                } catch (SQLException | IOException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
             }
-        }  catch (SQLException | IOException e) {
-            System.out.println("Error backing up articles.");
-            e.printStackTrace();
-        }
-
+            // Restored keys may be newer than the ones the key store has cached as current
+            groupKeys().clear();
+            articleCache.clear();
+            eventBus.publish(new DatabaseEvent.GroupArticlesReplaced());
+            return new RestoreResult(counts[0], counts[1], System.nanoTime() - start);
+        });
     }
 
+    /* Make sure the key a restored article is encrypted with is in group_keys; false if it cannot be */
+    private static boolean restoreGroupKey(GroupArticleRow row, Map<Long, byte[]> groupKeyRows, PreparedStatement insertKey) throws SQLException {
+        if (row.keyVersion <= 0) {
+            return row.keyVersion == 0;
+        }
+        long slot = (long) row.groupId << 32 | row.keyVersion;
+        byte[] existing = groupKeyRows.get(slot);
+        if (existing != null) {
+            return row.wrappedKey == null || Arrays.equals(existing, row.wrappedKey);
+        }
+        if (row.wrappedKey == null) {
+            return false;
+        }
+        insertKey.setInt(1, row.groupId);
+        insertKey.setInt(2, row.keyVersion);
+        insertKey.setBytes(3, row.wrappedKey);
+        insertKey.executeUpdate();
+        groupKeyRows.put(slot, row.wrappedKey);
+        return true;
+    }
 }
-
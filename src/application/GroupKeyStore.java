@@ -0,0 +1,199 @@
+package application;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import Encryption.EncryptedPayload;
+import Encryption.EncryptionHelper;
+import Encryption.GcmCipherEngine;
+
+/**
+ * <p> GroupKeyStore </p>
+ *
+ * <p> Description: The data keys special access articles are encrypted with, one set per group. A
+ * group's articles are encrypted under its own random AES-256 key, and only that key is encrypted
+ * under the master key; group_keys stores it wrapped that way, next to special_access_groups. A
+ * group can hold several versions of its key: new articles always use the latest one, and articles
+ * under an older one stay readable until KeyRotationJob has re-encrypted them. A group gets its
+ * first key when its first article is written. Unwrapped keys are kept in memory, so after the
+ * first use of a key version the database is not asked for it again. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class GroupKeyStore {
+    public static final int DATA_KEY_BYTES = 32;
+    // H2's error code for a primary key that is already taken
+    private static final int DUPLICATE_KEY = 23505;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /* One version of one group's data key, ready to use */
+    public static final class GroupKey {
+        public final int groupId;
+        public final int version;
+        private final GcmCipherEngine engine;
+
+        GroupKey(int groupId, int version, GcmCipherEngine engine) {
+            this.groupId = groupId;
+            this.version = version;
+            this.engine = engine;
+        }
+
+        /* Encrypt an article under this key, with a fresh nonce, in the version 3 payload form */
+        public byte[] encrypt(byte[] plainText) throws GeneralSecurityException {
+            byte[] nonce = engine.newNonce();
+            return EncryptedPayload.encodeGroupKey(version, nonce, engine.encrypt(plainText, nonce));
+        }
+
+        public byte[] decrypt(InputStream cipherText, int length, byte[] nonce) throws IOException, GeneralSecurityException {
+            return engine.decrypt(cipherText, length, nonce);
+        }
+
+        @Override
+        public String toString() {
+            return "group " + groupId + " key version " + version;
+        }
+    }
+
+    private final ConnectionSource connections;
+    private final EncryptionHelper master;
+    // groupId << 32 | version
+    private final Map<Long, GroupKey> keys = new ConcurrentHashMap<>();
+    private final Map<Integer, GroupKey> current = new ConcurrentHashMap<>();
+
+    public GroupKeyStore(ConnectionSource connections, EncryptionHelper master) {
+        this.connections = connections;
+        this.master = master;
+    }
+
+    /* The key new articles of the group are encrypted with; made if the group has none yet */
+    public GroupKey current(int groupId) throws SQLException {
+        GroupKey key = current.get(groupId);
+        if (key != null) {
+            return key;
+        }
+        int version = latestVersion(groupId);
+        key = version == 0 ? create(groupId, 1) : get(groupId, version);
+        current.merge(groupId, key, (a, b) -> a.version >= b.version ? a : b);
+        return current.get(groupId);
+    }
+
+    /* A given version of the group's key, for reading what was encrypted with it */
+    public GroupKey get(int groupId, int version) throws SQLException {
+        GroupKey key = keys.get(slot(groupId, version));
+        if (key != null) {
+            return key;
+        }
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT wrapped_key FROM group_keys WHERE group_id = ? AND key_version = ?")) {
+            pstmt.setInt(1, groupId);
+            pstmt.setInt(2, version);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Group " + groupId + " has no key version " + version);
+                }
+                return remember(unwrap(groupId, version, rs.getBytes(1)));
+            }
+        }
+    }
+
+    /**
+     * Give the group a new key version for the articles written from now on and return it. Articles
+     * under the older versions are still read with those until KeyRotationJob re-encrypts them.
+     */
+    public GroupKey rotate(int groupId) throws SQLException {
+        GroupKey key = create(groupId, latestVersion(groupId) + 1);
+        current.merge(groupId, key, (a, b) -> a.version >= b.version ? a : b);
+        return key;
+    }
+
+    /* Forget the keys of a deleted group */
+    public void removeGroup(int groupId) {
+        current.remove(groupId);
+        keys.keySet().removeIf(slot -> (int) (slot >>> 32) == groupId);
+    }
+
+    /* Forget every key, after the table was emptied */
+    public void clear() {
+        current.clear();
+        keys.clear();
+    }
+
+    private int latestVersion(int groupId) throws SQLException {
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT MAX(key_version) FROM group_keys WHERE group_id = ?")) {
+            pstmt.setInt(1, groupId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /* Store a new random key as the given version; if another thread got there first, use theirs */
+    private GroupKey create(int groupId, int version) throws SQLException {
+        byte[] dataKey = new byte[DATA_KEY_BYTES];
+        RANDOM.nextBytes(dataKey);
+        try {
+            byte[] wrapped;
+            try {
+                wrapped = master.wrapKey(dataKey);
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not wrap a key for group " + groupId, e);
+            }
+            try (Connection conn = connections.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(
+                         "INSERT INTO group_keys (group_id, key_version, wrapped_key) VALUES (?, ?, ?)")) {
+                pstmt.setInt(1, groupId);
+                pstmt.setInt(2, version);
+                pstmt.setBytes(3, wrapped);
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                if (e.getErrorCode() == DUPLICATE_KEY) {
+                    return get(groupId, version);
+                }
+                throw e;
+            }
+            return remember(new GroupKey(groupId, version, new GcmCipherEngine(dataKey)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM is not available", e);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    private GroupKey unwrap(int groupId, int version, byte[] wrapped) {
+        byte[] dataKey = null;
+        try {
+            dataKey = master.unwrapKey(wrapped);
+            return new GroupKey(groupId, version, new GcmCipherEngine(dataKey));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not unwrap group " + groupId + " key version " + version, e);
+        } finally {
+            if (dataKey != null) {
+                Arrays.fill(dataKey, (byte) 0);
+            }
+        }
+    }
+
+    private GroupKey remember(GroupKey key) {
+        GroupKey existing = keys.putIfAbsent(slot(key.groupId, key.version), key);
+        return existing != null ? existing : key;
+    }
+
+    private static long slot(int groupId, int version) {
+        return (long) groupId << 32 | (version & 0xffffffffL);
+    }
+}
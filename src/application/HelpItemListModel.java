@@ -0,0 +1,191 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javafx.collections.ObservableListBase;
+
+/**
+ * <p> HelpItemListModel </p>
+ *
+ * <p> Description: The help item titles a ListView shows, fetched a page at a time as the list
+ * scrolls to them. The model first loads where every page starts (one id per page), so its size is
+ * known and any page can be fetched by keyset, then get answers from the few pages that are loaded
+ * and asks for the others in the background, returning null until they arrive. Only a bounded
+ * number of pages are kept, the least recently shown are dropped, so memory stays the same however
+ * many help items there are. All methods must be called on the thread the AsyncDatabaseUtil delivers
+ * its results on, the JavaFX Application Thread in the application. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class HelpItemListModel extends ObservableListBase<String> {
+    public static final int PAGE_SIZE = 100;
+    // Pages kept in memory, several screens worth of titles
+    private static final int MAX_PAGES = 10;
+
+    private final AsyncDatabaseUtil asyncDb;
+    private final int pageSize;
+    private DatabaseUtil.HelpItemPageIndex index;
+    private String titleFilter = null;
+    // Bumped on every reload, so pages fetched for an older index are dropped
+    private int generation = 0;
+
+    // Access ordered, so the eldest page is the one shown least recently
+    private final LinkedHashMap<Integer, List<DatabaseUtil.HelpItemSummary>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<DatabaseUtil.HelpItemSummary>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<Integer> loading = new HashSet<>();
+
+    public HelpItemListModel(AsyncDatabaseUtil asyncDb) {
+        this(asyncDb, PAGE_SIZE);
+    }
+
+    public HelpItemListModel(AsyncDatabaseUtil asyncDb, int pageSize) {
+        this.asyncDb = asyncDb;
+        this.pageSize = pageSize;
+        this.index = new DatabaseUtil.HelpItemPageIndex(pageSize, 0, new int[0]);
+    }
+
+    /**
+     * Load the page index again, keeping only help items whose title contains titleFilter (all of them
+     * when it is null or empty). The future completes once the new size is known.
+     */
+    public CompletableFuture<Void> reload(String titleFilter) {
+        int reloadedAt = ++generation;
+        this.titleFilter = titleFilter;
+        return asyncDb.submit(db -> db.getHelpItemPageIndex(pageSize, titleFilter)).thenAccept(loaded -> {
+            if (reloadedAt != generation) {
+                return;
+            }
+            int oldSize = index.total;
+            index = loaded;
+            pages.clear();
+            loading.clear();
+            beginChange();
+            nextReplace(0, index.total, Collections.nCopies(oldSize, null));
+            endChange();
+        });
+    }
+
+    /* Load the page index again with the current filter, after help items were added or deleted */
+    public CompletableFuture<Void> reload() {
+        return reload(titleFilter);
+    }
+
+    /**
+     * Show the new values of an edited help item. Only its row changes, and only if its page is
+     * loaded; a page fetched later reads the new values from the database anyway. With a title filter
+     * the item may no longer match, so the list is reloaded instead.
+     */
+    public void update(helpItem item) {
+        if (titleFilter != null && !titleFilter.isEmpty()) {
+            reload();
+            return;
+        }
+        int page = Arrays.binarySearch(index.firstIds, item.getId());
+        if (page < 0) {
+            page = -page - 2;
+        }
+        List<DatabaseUtil.HelpItemSummary> items = page >= 0 ? pages.get(page) : null;
+        if (items == null) {
+            return;
+        }
+        for (int offset = 0; offset < items.size(); offset++) {
+            DatabaseUtil.HelpItemSummary old = items.get(offset);
+            if (old.id == item.getId()) {
+                items.set(offset, new DatabaseUtil.HelpItemSummary(old.id, item.getTitle(), item.getLevel(), item.getGroup()));
+                beginChange();
+                nextSet(page * pageSize + offset, old.title);
+                endChange();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return index.total;
+    }
+
+    /* The title at a position, or null while its page is being fetched */
+    @Override
+    public String get(int position) {
+        DatabaseUtil.HelpItemSummary summary = getSummary(position);
+        return summary == null ? null : summary.title;
+    }
+
+    /* The help item at a position, or null while its page is being fetched */
+    public DatabaseUtil.HelpItemSummary getSummary(int position) {
+        if (position < 0 || position >= index.total) {
+            throw new IndexOutOfBoundsException("Index " + position + " of " + index.total);
+        }
+        int page = position / pageSize;
+        List<DatabaseUtil.HelpItemSummary> items = pages.get(page);
+        if (items == null) {
+            fetch(page);
+            return null;
+        }
+        int offset = position % pageSize;
+        return offset < items.size() ? items.get(offset) : null;
+    }
+
+    /* Change the title shown at a position, after the help item was saved under a new title */
+    @Override
+    public String set(int position, String title) {
+        DatabaseUtil.HelpItemSummary old = getSummary(position);
+        if (old == null) {
+            return null;
+        }
+        List<DatabaseUtil.HelpItemSummary> items = pages.get(position / pageSize);
+        items.set(position % pageSize, new DatabaseUtil.HelpItemSummary(old.id, title, old.level, old.group));
+        beginChange();
+        nextSet(position, old.title);
+        endChange();
+        return old.title;
+    }
+
+    /* Number of pages in memory */
+    public int getLoadedPages() {
+        return pages.size();
+    }
+
+    private void fetch(int page) {
+        if (page >= index.firstIds.length || !loading.add(page)) {
+            return;
+        }
+        int fetchedAt = generation;
+        // Keyset: the page holds the ids from its first id on, the id before that is the key to start after
+        int afterId = index.firstIds[page] - 1;
+        String filter = titleFilter;
+        asyncDb.submit(db -> db.getHelpItemPage(afterId, pageSize, filter)).whenComplete((items, error) -> {
+            if (fetchedAt != generation) {
+                return;
+            }
+            loading.remove(page);
+            if (error != null) {
+                error.printStackTrace();
+                return;
+            }
+            pages.put(page, new ArrayList<>(items));
+            int from = page * pageSize;
+            int to = Math.min(from + pageSize, index.total);
+            beginChange();
+            nextReplace(from, to, Collections.nCopies(to - from, null));
+            endChange();
+        });
+    }
+}
@@ -0,0 +1,820 @@
+package application;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p> HelpItemSearchIndex </p>
+ *
+ * <p> Description: In-memory inverted index over the help items so searches never touch the database.
+ * Every token of the indexed fields has a posting list of the help items containing it, with the
+ * number of times it occurs in each field. Besides the exact and prefix searches, rank orders the
+ * help items by BM25F: every field's term frequency is normalised by the field's length, weighted by
+ * the field's boost and summed before BM25's saturation, so a word in the title counts for more than
+ * the same word in the description. Only the best hits are kept, in a heap the size of the page asked
+ * for, so ranking costs the postings of the query words plus log(limit) per matching help item.
+ * For misspelled queries, fuzzy finds the title and keyword terms within a few edits of each word:
+ * the terms sharing enough character trigrams with the word are the candidates, and only those are
+ * compared with it letter by letter, so a typo costs a few trigram lookups rather than a scan over
+ * every title. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class HelpItemSearchIndex {
+
+    /* Fields of a help item that are tokenized into the index, with the weight of a match in each when ranking */
+    public enum Field {
+        TITLE(4.0f), AUTHORS(1.5f), KEYWORDS(3.0f), SHORT_DESCRIPTION(2.0f), GROUP(0.5f), DESCRIPTION(1.0f);
+
+        final float boost;
+
+        Field(float boost) {
+            this.boost = boost;
+        }
+
+        // A posting packs the term frequency of every field into one long, eight bits per field
+        long bits() {
+            return 0xFFL << (8 * ordinal());
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final long ALL_FIELDS = (1L << (8 * FIELDS.length)) - 1;
+    private static final int MAX_TERM_FREQUENCY = 0xFF;
+
+    // BM25: how fast repeated terms stop adding to the score, and how much field length counts
+    static final float K1 = 1.2f;
+    static final float B = 0.75f;
+    // Completions of the word still being typed count for less than the word itself
+    static final float PREFIX_WEIGHT = 0.5f;
+    // Completions of the last word scored at most, the first ones in alphabetical order; a short
+    // prefix can have thousands, and each costs a pass over its posting list
+    static final int MAX_PREFIX_TERMS = 64;
+    // Fuzzy search corrects words to the terms of these fields
+    private static final long FUZZY_FIELDS = Field.TITLE.bits() | Field.KEYWORDS.bits();
+    // Words shorter than this are only matched exactly, one edit turns most of them into another word
+    static final int MIN_FUZZY_LENGTH = 4;
+    // Words at least this long may be two edits from the term, shorter ones one
+    static final int TWO_EDIT_LENGTH = 8;
+    // Corrections of one word scored at most, the closest first
+    static final int MAX_CORRECTIONS = 16;
+
+    /* One ranked help item */
+    public static class Hit {
+        public final int id;
+        public final String title;
+        public final double score;
+
+        Hit(int id, String title, double score) {
+            this.id = id;
+            this.title = title;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %s (%.3f)", id, title, score);
+        }
+    }
+
+    /* The best hits, best first, and how many help items matched at all */
+    public static class Ranking {
+        public final int total;
+        public final List<Hit> hits;
+
+        Ranking(int total, List<Hit> hits) {
+            this.total = total;
+            this.hits = hits;
+        }
+    }
+
+    /* The help items containing a token, by slot, in ascending slot order */
+    private static final class Posting {
+        int[] slots = new int[2];
+        long[] frequencies = new long[2];
+        int size;
+
+        void put(int slot, long frequency) {
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at >= 0) {
+                frequencies[at] = frequency;
+                return;
+            }
+            at = -at - 1;
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            System.arraycopy(slots, at, slots, at + 1, size - at);
+            System.arraycopy(frequencies, at, frequencies, at + 1, size - at);
+            slots[at] = slot;
+            frequencies[at] = frequency;
+            size++;
+        }
+
+        /* Returns the frequencies the slot had, 0 if it was not there */
+        long remove(int slot) {
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at < 0) {
+                return 0;
+            }
+            long frequency = frequencies[at];
+            System.arraycopy(slots, at + 1, slots, at, size - at - 1);
+            System.arraycopy(frequencies, at + 1, frequencies, at, size - at - 1);
+            size--;
+            return frequency;
+        }
+    }
+
+    /* What the index remembers about a help item: enough to rank it and to remove it again */
+    private static class IndexedItem {
+        final int id;
+        final String title;
+        final String[] tokens;
+        final int[] lengths;
+
+        IndexedItem(int id, String title, String[] tokens, int[] lengths) {
+            this.id = id;
+            this.title = title;
+            this.tokens = tokens;
+            this.lengths = lengths;
+        }
+    }
+
+    // token -> posting list
+    private final TreeMap<String, Posting> postings = new TreeMap<>();
+    // Help items by slot, a dense number so ranking can keep scores in an array; null for a free slot
+    private IndexedItem[] items = new IndexedItem[16];
+    private int slotCount = 0;
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    // help item id -> slot
+    private final Map<Integer, Integer> slotsById = new HashMap<>();
+    // title -> ids, deleteHelpItem works by title
+    private final Map<String, Set<Integer>> idsByTitle = new HashMap<>();
+    // Sum of each field's length over all help items, for the average BM25 divides by
+    private final long[] totalLengths = new long[FIELDS.length];
+    // Per slot and field, boost / (1 - B + B * length / average length): everything in a field's BM25
+    // term weight except the term frequency. Worked out again by the first ranking after a change
+    private float[] norms = new float[0];
+    private boolean normsCurrent = false;
+    private final Object normsLock = new Object();
+    // Trigram -> the title and keyword terms containing it, padded with '$' at both ends
+    private final Map<String, Set<String>> termsByTrigram = new HashMap<>();
+    // Title and keyword term -> number of help items with it there; the term leaves termsByTrigram at 0
+    private final Map<String, Integer> fuzzyTerms = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /* Throw away the current contents and index the given help items */
+    public void rebuild(Collection<helpItem> helpItems) {
+        // In id order, so every posting list is appended to instead of inserted into
+        List<helpItem> sorted = new ArrayList<>(helpItems);
+        sorted.sort(Comparator.comparing(helpItem::getId));
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            items = new IndexedItem[Math.max(16, sorted.size())];
+            slotCount = 0;
+            freeSlots.clear();
+            slotsById.clear();
+            idsByTitle.clear();
+            Arrays.fill(totalLengths, 0);
+            termsByTrigram.clear();
+            fuzzyTerms.clear();
+            normsCurrent = false;
+            for (helpItem item : sorted) {
+                addLocked(item);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* Remove everything from the index */
+    public void clear() {
+        rebuild(new ArrayList<>());
+    }
+
+    /* Add a help item, replacing any previous version with the same id */
+    public void add(helpItem item) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(item.getId());
+            addLocked(item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* Re-index a help item after it was updated */
+    public void update(helpItem item) {
+        add(item);
+    }
+
+    /* Remove a help item by id */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* Remove every help item with the given title */
+    public void removeByTitle(String title) {
+        lock.writeLock().lock();
+        try {
+            Set<Integer> ids = idsByTitle.get(title);
+            if (ids != null) {
+                for (Integer id : new ArrayList<>(ids)) {
+                    removeLocked(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* Number of indexed help items */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Ids of the help items containing exactly this term in one of the fields */
+    public Set<Integer> searchTerm(String term, Field... fields) {
+        lock.readLock().lock();
+        try {
+            Set<Integer> result = new HashSet<>();
+            collect(postings.get(normalize(term)), maskOf(fields), result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Ids of the help items containing a term starting with the prefix in one of the fields */
+    public Set<Integer> searchPrefix(String prefix, Field... fields) {
+        lock.readLock().lock();
+        try {
+            return prefixLocked(normalize(prefix), maskOf(fields));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search for help items matching every word of the query. All words but the last must match a
+     * term exactly, the last one is treated as a prefix since the user is usually still typing it.
+     * An empty field list searches all fields.
+     */
+    public Set<Integer> search(String query, Field... fields) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty()) {
+            return new HashSet<>();
+        }
+        long mask = maskOf(fields);
+        lock.readLock().lock();
+        try {
+            Set<Integer> result = null;
+            for (int i = 0; i < words.size(); i++) {
+                Set<Integer> matches;
+                if (i == words.size() - 1) {
+                    matches = prefixLocked(words.get(i), mask);
+                } else {
+                    matches = new HashSet<>();
+                    collect(postings.get(words.get(i)), mask, matches);
+                }
+                if (result == null) {
+                    result = matches;
+                } else {
+                    result.retainAll(matches);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Same as search, but returns the titles of the matching help items in id order */
+    public List<String> searchTitles(String query, Field... fields) {
+        Set<Integer> ids = new TreeSet<>(search(query, fields));
+        List<String> titles = new ArrayList<>(ids.size());
+        lock.readLock().lock();
+        try {
+            for (Integer id : ids) {
+                Integer slot = slotsById.get(id);
+                if (slot != null) {
+                    titles.add(items[slot].title);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return titles;
+    }
+
+    /**
+     * The limit help items that best match the query by BM25F over every field, best first; ties go
+     * to the lower id. A help item matches if it contains any word of the query, and the last word
+     * also matches the first MAX_PREFIX_TERMS terms, alphabetically, it is the start of, at PREFIX_WEIGHT.
+     */
+    public Ranking rank(String query, int limit) {
+        Set<String> words = new LinkedHashSet<>(tokenize(query));
+        if (words.isEmpty() || limit < 1) {
+            return new Ranking(0, Collections.emptyList());
+        }
+        String last = null;
+        for (String word : words) {
+            last = word;
+        }
+        lock.readLock().lock();
+        try {
+            int documents = slotsById.size();
+            float[] norms = currentNorms();
+            Scores scores = new Scores(slotCount);
+            for (String word : words) {
+                if (!word.equals(last)) {
+                    score(postings.get(word), 1, documents, norms, ALL_FIELDS, scores);
+                    continue;
+                }
+                score(postings.get(word), 1, documents, norms, ALL_FIELDS, scores);
+                int expanded = 0;
+                for (Posting completion : postings.subMap(word, false, word + Character.MAX_VALUE, false).values()) {
+                    if (expanded++ == MAX_PREFIX_TERMS) {
+                        break;
+                    }
+                    score(completion, PREFIX_WEIGHT, documents, norms, ALL_FIELDS, scores);
+                }
+            }
+            return new Ranking(scores.matches, topHits(scores, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rank help items like rank does, but by the title and keyword terms the words of the query are
+     * probably misspellings of, for when the words as typed match nothing. A word of MIN_FUZZY_LENGTH
+     * letters or more matches terms one edit away, from TWO_EDIT_LENGTH letters two edits; a term counts
+     * for 1 / (1 + edits) of an exact match.
+     */
+    public Ranking fuzzy(String query, int limit) {
+        Set<String> words = new LinkedHashSet<>(tokenize(query));
+        if (words.isEmpty() || limit < 1) {
+            return new Ranking(0, Collections.emptyList());
+        }
+        lock.readLock().lock();
+        try {
+            int documents = slotsById.size();
+            float[] norms = currentNorms();
+            Scores scores = new Scores(slotCount);
+            for (String word : words) {
+                for (Correction correction : correctionsLocked(word)) {
+                    score(postings.get(correction.term), 1f / (1 + correction.edits), documents, norms, FUZZY_FIELDS, scores);
+                }
+            }
+            return new Ranking(scores.matches, topHits(scores, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Same as fuzzy, but returns only the titles, best first */
+    public List<String> fuzzyTitles(String query, int limit) {
+        List<String> titles = new ArrayList<>();
+        for (Hit hit : fuzzy(query, limit).hits) {
+            titles.add(hit.title);
+        }
+        return titles;
+    }
+
+    /* A title or keyword term close to a word of a query */
+    private static final class Correction {
+        final String term;
+        final int edits;
+
+        Correction(String term, int edits) {
+            this.term = term;
+            this.edits = edits;
+        }
+    }
+
+    /*
+     * The terms within the word's edit limit, closest first. One edit changes at most three of the
+     * word's trigrams, so a term within k edits still has all but 3k of them; only terms sharing that
+     * many (and at least one) are compared with the word.
+     */
+    private List<Correction> correctionsLocked(String word) {
+        List<Correction> corrections = new ArrayList<>();
+        int maxEdits = word.length() >= TWO_EDIT_LENGTH ? 2 : word.length() >= MIN_FUZZY_LENGTH ? 1 : 0;
+        if (maxEdits == 0) {
+            if (fuzzyTerms.containsKey(word)) {
+                corrections.add(new Correction(word, 0));
+            }
+            return corrections;
+        }
+        Set<String> trigrams = trigrams(word);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : trigrams) {
+            Set<String> terms = termsByTrigram.get(trigram);
+            if (terms != null) {
+                for (String term : terms) {
+                    shared.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        int needed = Math.max(1, trigrams.size() - 3 * maxEdits);
+        for (Map.Entry<String, Integer> candidate : shared.entrySet()) {
+            if (candidate.getValue() < needed) {
+                continue;
+            }
+            int edits = boundedDistance(word, candidate.getKey(), maxEdits);
+            if (edits <= maxEdits) {
+                corrections.add(new Correction(candidate.getKey(), edits));
+            }
+        }
+        corrections.sort(Comparator.<Correction>comparingInt(c -> c.edits).thenComparing(c -> c.term));
+        return corrections.size() > MAX_CORRECTIONS ? corrections.subList(0, MAX_CORRECTIONS) : corrections;
+    }
+
+    /*
+     * The Levenshtein distance between a and b if it is at most max, else max + 1. Only the diagonal
+     * band of cells within max of each other can hold a distance of max or less, so each row costs
+     * 2 * max + 1 cells, and the comparison stops at the first row with none left at max or less.
+     */
+    static int boundedDistance(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        int over = max + 1;
+        if (Math.abs(n - m) > max) {
+            return over;
+        }
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = Math.min(j, over);
+        }
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(m, i + max);
+            current[from - 1] = from == 1 ? Math.min(i, over) : over;
+            int best = current[from - 1];
+            char c = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int distance = Math.min(previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1),
+                        Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = Math.min(distance, over);
+                best = Math.min(best, current[j]);
+            }
+            if (to < m) {
+                current[to + 1] = over;
+            }
+            if (best > max) {
+                return over;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+
+    /* The distinct trigrams of a term padded with '$' at both ends, so short terms have some too */
+    private static Set<String> trigrams(String term) {
+        String padded = "$" + term + "$";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /* The score of every help item by slot for one ranking, and the slots that have one */
+    private static final class Scores {
+        final float[] bySlot;
+        int[] matched;
+        int matches;
+
+        Scores(int slots) {
+            bySlot = new float[slots];
+            matched = new int[Math.min(slots, 1024)];
+        }
+
+        void add(int slot, float score) {
+            if (bySlot[slot] == 0) {
+                if (matches == matched.length) {
+                    matched = Arrays.copyOf(matched, Math.min(bySlot.length, matches * 2));
+                }
+                matched[matches++] = slot;
+            }
+            bySlot[slot] += score;
+        }
+    }
+
+    /* Add one term's BM25F score in the masked fields, times weight, to every help item in its posting list */
+    private static void score(Posting posting, float weight, int documents, float[] norms, long mask, Scores scores) {
+        if (posting == null) {
+            return;
+        }
+        float idf = weight * (float) Math.log(1 + (documents - posting.size + 0.5) / (posting.size + 0.5));
+        int[] slots = posting.slots;
+        long[] frequencies = posting.frequencies;
+        for (int i = 0; i < posting.size; i++) {
+            long inFields = frequencies[i] & mask;
+            if (inFields == 0) {
+                continue;
+            }
+            int slot = slots[i];
+            int base = slot * FIELDS.length;
+            float frequency = 0;
+            for (long left = inFields; left != 0; ) {
+                int shift = Long.numberOfTrailingZeros(left) & ~7;
+                frequency += ((left >>> shift) & 0xFF) * norms[base + (shift >>> 3)];
+                left &= ~(0xFFL << shift);
+            }
+            scores.add(slot, idf * frequency / (K1 + frequency));
+        }
+    }
+
+    /* The norms for the index as it is now; the caller holds the read lock, so no writer can change it meanwhile */
+    private float[] currentNorms() {
+        synchronized (normsLock) {
+            if (normsCurrent) {
+                return norms;
+            }
+            int documents = slotsById.size();
+            float[] lengthWeights = new float[FIELDS.length];
+            for (Field field : FIELDS) {
+                double average = documents == 0 ? 0 : (double) totalLengths[field.ordinal()] / documents;
+                lengthWeights[field.ordinal()] = average == 0 ? 0 : (float) (B / average);
+            }
+            float[] fresh = new float[slotCount * FIELDS.length];
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (items[slot] == null) {
+                    continue;
+                }
+                int[] lengths = items[slot].lengths;
+                for (int field = 0; field < FIELDS.length; field++) {
+                    fresh[slot * FIELDS.length + field] = FIELDS[field].boost / (1 - B + lengths[field] * lengthWeights[field]);
+                }
+            }
+            norms = fresh;
+            normsCurrent = true;
+            return fresh;
+        }
+    }
+
+    /* The best limit of the matched slots, kept in a min-heap of that size, then sorted best first */
+    private List<Hit> topHits(Scores ranked, int limit) {
+        float[] scores = ranked.bySlot;
+        int[] matched = ranked.matched;
+        int matches = ranked.matches;
+        int capacity = Math.min(limit, matches);
+        int[] heap = new int[capacity];
+        int size = 0;
+        for (int i = 0; i < matches; i++) {
+            int slot = matched[i];
+            if (size < capacity) {
+                heap[size] = slot;
+                siftUp(heap, size++, scores);
+            } else if (better(slot, heap[0], scores)) {
+                heap[0] = slot;
+                siftDown(heap, size, scores);
+            }
+        }
+        Hit[] hits = new Hit[size];
+        while (size > 0) {
+            int slot = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, scores);
+            hits[size] = new Hit(items[slot].id, items[slot].title, scores[slot]);
+        }
+        return Arrays.asList(hits);
+    }
+
+    /* Whether slot a ranks above slot b */
+    private boolean better(int a, int b, float[] scores) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && items[a].id < items[b].id);
+    }
+
+    private void siftUp(int[] heap, int at, float[] scores) {
+        int slot = heap[at];
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (!better(heap[parent], slot, scores)) {
+                break;
+            }
+            heap[at] = heap[parent];
+            at = parent;
+        }
+        heap[at] = slot;
+    }
+
+    private void siftDown(int[] heap, int size, float[] scores) {
+        if (size == 0) {
+            return;
+        }
+        int slot = heap[0];
+        int at = 0;
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heap[child], heap[child + 1], scores)) {
+                child++;
+            }
+            if (!better(slot, heap[child], scores)) {
+                break;
+            }
+            heap[at] = heap[child];
+            at = child;
+        }
+        heap[at] = slot;
+    }
+
+    /* Split text into lower case words of letters and digits */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i < lower.length(); i++) {
+            if (Character.isLetterOrDigit(lower.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(lower.substring(start));
+        }
+        return tokens;
+    }
+
+    private static String normalize(String term) {
+        return term == null ? "" : term.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long maskOf(Field... fields) {
+        if (fields == null || fields.length == 0) {
+            return ALL_FIELDS;
+        }
+        long mask = 0;
+        for (Field field : fields) {
+            mask |= field.bits();
+        }
+        return mask;
+    }
+
+    private void collect(Posting posting, long mask, Set<Integer> into) {
+        if (posting == null) {
+            return;
+        }
+        for (int i = 0; i < posting.size; i++) {
+            if ((posting.frequencies[i] & mask) != 0) {
+                into.add(items[posting.slots[i]].id);
+            }
+        }
+    }
+
+    private Set<Integer> prefixLocked(String prefix, long mask) {
+        Set<Integer> result = new HashSet<>();
+        if (prefix.isEmpty()) {
+            return result;
+        }
+        for (Posting posting : postings.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            collect(posting, mask, result);
+        }
+        return result;
+    }
+
+    private void addLocked(helpItem item) {
+        int id = item.getId();
+        Map<String, Long> tokens = new HashMap<>();
+        int[] lengths = new int[FIELDS.length];
+        lengths[Field.TITLE.ordinal()] = addTokens(tokens, item.getTitle(), Field.TITLE);
+        lengths[Field.AUTHORS.ordinal()] = addTokens(tokens, item.getAuthors(), Field.AUTHORS);
+        lengths[Field.KEYWORDS.ordinal()] = addTokens(tokens, item.getKeywords(), Field.KEYWORDS);
+        lengths[Field.SHORT_DESCRIPTION.ordinal()] = addTokens(tokens, item.getShortDescription(), Field.SHORT_DESCRIPTION);
+        lengths[Field.GROUP.ordinal()] = addTokens(tokens, item.getGroup(), Field.GROUP);
+        lengths[Field.DESCRIPTION.ordinal()] = addTokens(tokens, item.getDescription(), Field.DESCRIPTION);
+
+        Integer free = freeSlots.poll();
+        int slot = free != null ? free : slotCount++;
+        if (slot == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+        }
+        for (Map.Entry<String, Long> token : tokens.entrySet()) {
+            postings.computeIfAbsent(token.getKey(), k -> new Posting()).put(slot, token.getValue());
+            if ((token.getValue() & FUZZY_FIELDS) != 0 && fuzzyTerms.merge(token.getKey(), 1, Integer::sum) == 1) {
+                for (String trigram : trigrams(token.getKey())) {
+                    termsByTrigram.computeIfAbsent(trigram, k -> new HashSet<>()).add(token.getKey());
+                }
+            }
+        }
+        for (int i = 0; i < lengths.length; i++) {
+            totalLengths[i] += lengths[i];
+        }
+        items[slot] = new IndexedItem(id, item.getTitle(), tokens.keySet().toArray(new String[0]), lengths);
+        slotsById.put(id, slot);
+        normsCurrent = false;
+        idsByTitle.computeIfAbsent(item.getTitle(), k -> new HashSet<>()).add(id);
+    }
+
+    /* Count every token of the text in the field; returns the number of tokens, the field's length */
+    private static int addTokens(Map<String, Long> tokens, String text, Field field) {
+        List<String> words = tokenize(text);
+        int shift = 8 * field.ordinal();
+        for (String word : words) {
+            tokens.merge(word, 1L << shift, (a, b) -> {
+                // Saturate at 255 rather than carry into the next field; BM25 has stopped counting long before
+                return ((a >>> shift) & 0xFF) == MAX_TERM_FREQUENCY ? a : a + b;
+            });
+        }
+        return words.size();
+    }
+
+    private void removeLocked(int id) {
+        Integer slot = slotsById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        IndexedItem item = items[slot];
+        for (String token : item.tokens) {
+            Posting posting = postings.get(token);
+            if (posting != null) {
+                if ((posting.remove(slot) & FUZZY_FIELDS) != 0) {
+                    removeFuzzyTerm(token);
+                }
+                if (posting.size == 0) {
+                    postings.remove(token);
+                }
+            }
+        }
+        for (int i = 0; i < item.lengths.length; i++) {
+            totalLengths[i] -= item.lengths[i];
+        }
+        items[slot] = null;
+        freeSlots.push(slot);
+        normsCurrent = false;
+        Set<Integer> ids = idsByTitle.get(item.title);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idsByTitle.remove(item.title);
+            }
+        }
+    }
+
+    /* One help item less has the term in its title or keywords; drop its trigrams when none has */
+    private void removeFuzzyTerm(String term) {
+        if (fuzzyTerms.merge(term, -1, Integer::sum) > 0) {
+            return;
+        }
+        fuzzyTerms.remove(term);
+        for (String trigram : trigrams(term)) {
+            Set<String> terms = termsByTrigram.get(trigram);
+            if (terms != null) {
+                terms.remove(term);
+                if (terms.isEmpty()) {
+                    termsByTrigram.remove(trigram);
+                }
+            }
+        }
+    }
+}
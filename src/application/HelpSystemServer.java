@@ -0,0 +1,362 @@
+package application;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> HelpSystemServer </p>
+ *
+ * <p> Description: Serves the help system over HTTP without the JavaFX window, so many clients can
+ * search and read help items at once. Each request runs on its own virtual thread when the JDK has
+ * them (21 and later) and on a pool of platform threads otherwise; the connection pool of
+ * DatabaseUtil decides how many of them use the database at the same time. Every endpoint answers
+ * with JSON:
+ * <ul>
+ * <li> GET /api/search?q=words&amp;limit=20 - the best matching help items, ranked by BM25,
+ * or by the closest spellings when no word matches as typed </li>
+ * <li> GET /api/articles/{id} - one help item </li>
+ * <li> POST /api/login - username and password as a form, answers a bearer token </li>
+ * <li> GET /api/groups/{groupId}/articles/{articleId} - a special access article, needs the token </li>
+ * </ul> </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class HelpSystemServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    // Connections for the server; a desktop user needs far fewer than many clients do
+    public static final int DEFAULT_POOL_SIZE = 32;
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = 60_000;
+    // Threads when there are no virtual threads, enough to keep every pooled connection busy
+    private static final int PLATFORM_THREADS = 64;
+    // Connections waiting to be accepted
+    private static final int BACKLOG = 1024;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 100;
+    // Seconds between metrics snapshots on standard output
+    private static final int DEFAULT_METRICS_SECONDS = 60;
+    private static final long SESSION_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /* Handles one endpoint; what it returns is sent with status 200 */
+    private interface Endpoint {
+        String handle(HttpExchange exchange, String[] path) throws Exception;
+    }
+
+    /* Ends a request with a status other than 200 */
+    private static final class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static final class Session {
+        private final String username;
+        private final long expiresAt;
+
+        Session(String username, long expiresAt) {
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final DatabaseUtil db;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /* Serve the database on an address; port 0 picks a free port, see getPort */
+    public HelpSystemServer(DatabaseUtil db, InetSocketAddress address) throws IOException {
+        this.db = db;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = AsyncDatabaseUtil.newDefaultExecutor("http-worker", PLATFORM_THREADS);
+        server.setExecutor(executor);
+        server.createContext("/api/search", exchange -> serve(exchange, "GET", this::search));
+        server.createContext("/api/articles/", exchange -> serve(exchange, "GET", this::article));
+        server.createContext("/api/login", exchange -> serve(exchange, "POST", this::login));
+        server.createContext("/api/groups/", exchange -> serve(exchange, "GET", this::groupArticle));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /* Stop accepting requests, give the running ones a second to finish */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /* GET /api/search?q=...&limit=... */
+    private String search(HttpExchange exchange, String[] path) throws Exception {
+        Map<String, String> params = parseForm(exchange.getRequestURI().getRawQuery());
+        String query = params.getOrDefault("q", "");
+        int limit = DEFAULT_SEARCH_LIMIT;
+        if (params.containsKey("limit")) {
+            limit = parseInt(params.get("limit"));
+            if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+                throw new HttpError(400, "limit must be between 1 and " + MAX_SEARCH_LIMIT);
+            }
+        }
+        HelpItemSearchIndex.Ranking ranking = db.getSearchIndex().rank(query, limit);
+        // Nothing matches the words as typed, so rank the titles and keywords they are probably misspellings of
+        boolean fuzzy = ranking.total == 0;
+        if (fuzzy) {
+            ranking = db.getSearchIndex().fuzzy(query, limit);
+        }
+        List<Integer> ids = new ArrayList<>(ranking.hits.size());
+        for (HelpItemSearchIndex.Hit hit : ranking.hits) {
+            ids.add(hit.id);
+        }
+        // The summaries come back in id order, the results go out in rank order
+        Map<Integer, DatabaseUtil.HelpItemSummary> summaries = new HashMap<>();
+        for (DatabaseUtil.HelpItemSummary summary : db.getHelpItemSummaries(ids)) {
+            summaries.put(summary.id, summary);
+        }
+        StringBuilder json = new StringBuilder("{\"query\":").append(quote(query))
+                .append(",\"total\":").append(ranking.total)
+                .append(",\"fuzzy\":").append(fuzzy).append(",\"results\":[");
+        boolean first = true;
+        for (HelpItemSearchIndex.Hit hit : ranking.hits) {
+            DatabaseUtil.HelpItemSummary summary = summaries.get(hit.id);
+            if (summary == null) {
+                continue; // deleted since it was ranked
+            }
+            json.append(first ? "" : ",")
+                    .append("{\"id\":").append(summary.id)
+                    .append(",\"title\":").append(quote(summary.title))
+                    .append(",\"level\":").append(quote(summary.level))
+                    .append(",\"group\":").append(quote(summary.group))
+                    .append(",\"score\":").append(String.format(Locale.ROOT, "%.4f", hit.score)).append('}');
+            first = false;
+        }
+        return json.append("]}").toString();
+    }
+
+    /* GET /api/articles/{id} */
+    private String article(HttpExchange exchange, String[] path) throws Exception {
+        if (path.length != 3) {
+            throw new HttpError(404, "Not found");
+        }
+        helpItem item = db.getHelpItemById(parseInt(path[2]));
+        if (item == null) {
+            throw new HttpError(404, "No help item " + path[2]);
+        }
+        return "{\"id\":" + item.getId()
+                + ",\"title\":" + quote(item.getTitle())
+                + ",\"description\":" + quote(item.getDescription())
+                + ",\"shortDescription\":" + quote(item.getShortDescription())
+                + ",\"authors\":" + quote(item.getAuthors())
+                + ",\"keywords\":" + quote(item.getKeywords())
+                + ",\"references\":" + quote(item.getReferences())
+                + ",\"level\":" + quote(item.getLevel())
+                + ",\"group\":" + quote(item.getGroup()) + "}";
+    }
+
+    /* POST /api/login with username=...&password=... */
+    private String login(HttpExchange exchange, String[] path) throws Exception {
+        Map<String, String> params;
+        try (InputStream body = exchange.getRequestBody()) {
+            params = parseForm(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        String username = params.get("username");
+        String password = params.get("password");
+        if (username == null || password == null) {
+            throw new HttpError(400, "username and password are required");
+        }
+        if (!db.login(username, password)) {
+            throw new HttpError(401, "Invalid username or password");
+        }
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> session.expiresAt <= now);
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(username, now + SESSION_TTL_MILLIS));
+        return "{\"token\":" + quote(token) + ",\"username\":" + quote(username)
+                + ",\"expiresIn\":" + TimeUnit.MILLISECONDS.toSeconds(SESSION_TTL_MILLIS) + "}";
+    }
+
+    /* GET /api/groups/{groupId}/articles/{articleId} with Authorization: Bearer token */
+    private String groupArticle(HttpExchange exchange, String[] path) throws Exception {
+        if (path.length != 5 || !path[3].equals("articles")) {
+            throw new HttpError(404, "Not found");
+        }
+        String username = authenticate(exchange);
+        int groupId = parseInt(path[2]);
+        int articleId = parseInt(path[4]);
+        String content = db.getGroupArticleContent(groupId, articleId, username);
+        if (content == null) {
+            throw new HttpError(404, "No article " + articleId + " in group " + groupId);
+        }
+        return "{\"groupId\":" + groupId + ",\"articleId\":" + articleId + ",\"content\":" + quote(content) + "}";
+    }
+
+    /* The user the bearer token of a request was given to */
+    private String authenticate(HttpExchange exchange) throws HttpError {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            throw new HttpError(401, "Bearer token required");
+        }
+        String token = header.substring("Bearer ".length()).trim();
+        Session session = sessions.get(token);
+        if (session == null || session.expiresAt <= System.currentTimeMillis()) {
+            sessions.remove(token);
+            throw new HttpError(401, "Token is invalid or expired");
+        }
+        return session.username;
+    }
+
+    /* Run an endpoint and send what it returns, or the error it ends with */
+    private void serve(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        int status = 200;
+        String json;
+        try {
+            if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                throw new HttpError(405, "Use " + method);
+            }
+            String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+            json = endpoint.handle(exchange, path);
+        } catch (HttpError e) {
+            status = e.status;
+            json = error(e.getMessage());
+        } catch (SecurityException e) {
+            status = 403;
+            json = error(e.getMessage());
+        } catch (PasswordHasher.OverloadedException e) {
+            status = 503;
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            json = error(e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Request " + exchange.getRequestURI() + " failed: " + e);
+            e.printStackTrace();
+            status = 500;
+            json = error("Internal error");
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static int parseInt(String value) throws HttpError {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Not a number: " + value);
+        }
+    }
+
+    /* Decode name=value&name=value, as sent in a query string or a form body */
+    static Map<String, String> parseForm(String form) {
+        Map<String, String> params = new HashMap<>();
+        if (form == null || form.isEmpty()) {
+            return params;
+        }
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /* A JSON string literal, or null */
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Run the server until the process is stopped. Options: --port=8080, --db=jdbc:h2:~/test,
+     * --pool=32 for the number of database connections and --metrics=60 for the seconds between
+     * printed DatabaseUtil metrics, 0 for none.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        int poolSize = DEFAULT_POOL_SIZE;
+        String jdbcUrl = null;
+        int metricsSeconds = DEFAULT_METRICS_SECONDS;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--pool=")) {
+                poolSize = Integer.parseInt(arg.substring("--pool=".length()));
+            } else if (arg.startsWith("--db=")) {
+                jdbcUrl = arg.substring("--db=".length());
+            } else if (arg.startsWith("--metrics=")) {
+                metricsSeconds = Integer.parseInt(arg.substring("--metrics=".length()));
+            }
+        }
+        DatabaseUtil db = jdbcUrl == null ? new DatabaseUtil() : new DatabaseUtil(jdbcUrl);
+        db.connectToDatabase(poolSize, POOL_IDLE_TIMEOUT_MILLIS);
+        // Build the search index before the first request instead of during it
+        db.getSearchIndex();
+        if (metricsSeconds > 0) {
+            db.getMetrics().startReporting(metricsSeconds, TimeUnit.SECONDS, System.out::print);
+        }
+        HelpSystemServer server = new HelpSystemServer(db, new InetSocketAddress(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            db.closeConnection();
+        }));
+        server.start();
+        System.out.println("Help system API listening on http://localhost:" + server.getPort() + "/api/");
+    }
+}
@@ -9,6 +9,41 @@ import java.util.List;
 
 import java.util.List;
 import java.util.Map;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import javax.crypto.AEADBadTagException;
+import javax.management.ObjectName;
+
+import Encryption.CipherEngine;
+import Encryption.EncryptedPayload;
+import Encryption.EncryptionHelper;
+import Encryption.EncryptionUtils;
+
 /**
  * <p> JUnitTest</p>
  *
@@ -322,4 +357,812 @@ public class JUnitTest {
             fail("Error backup");
         }
     }
-}
\ No newline at end of file
+
+    /*
+        TEST: SEARCH INDEX FOLLOWS ADD AND DELETE
+    */
+    @Test
+    public void testSearchIndex() throws Exception {
+        db.addHelpItem("Intro to Java", "Desc", "Learn recursion basics", "Alice Smith", "java,recursion", "Ref", "Beginner", "CSE360");
+        HelpItemSearchIndex index = db.getSearchIndex();
+
+        assertEquals(List.of("Intro to Java"), index.searchTitles("ali", HelpItemSearchIndex.Field.AUTHORS));
+        assertTrue(index.searchTitles("ali", HelpItemSearchIndex.Field.TITLE).isEmpty());
+
+        db.addHelpItem("Polymorphism", "Desc", "Objects", "Bob", "oop", "Ref", "Beginner", "CSE360");
+        assertEquals(2, index.searchTitles("cse360").size());
+
+        db.deleteHelpItem("Intro to Java");
+        assertEquals(List.of("Polymorphism"), index.searchTitles("cse360"));
+    }
+
+    /*
+        TEST: CONCURRENT READERS ON THE CONNECTION POOL
+    */
+    @Test
+    public void testConcurrentReadsUseConnectionPool() throws Exception {
+        db.addHelpItem("Pooled", "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group");
+
+        Thread[] readers = new Thread[8];
+        boolean[] found = new boolean[readers.length];
+        for (int i = 0; i < readers.length; i++) {
+            int index = i;
+            readers[i] = new Thread(() -> found[index] = db.getHelpItem("Pooled") != null);
+            readers[i].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        for (boolean f : found) {
+            assertTrue("Every reader should see the help item", f);
+        }
+        assertTrue(db.getConnectionPoolStats().borrows >= readers.length);
+        assertEquals(0, db.getConnectionPoolStats().active);
+    }
+
+    /*
+        TEST: PREPARED STATEMENTS ARE REUSED
+    */
+    @Test
+    public void testPreparedStatementCacheHits() throws Exception {
+        db.addHelpItem("Cached", "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group");
+        db.getHelpItem("Cached");
+        long hitsBefore = db.getConnectionPoolStats().statementCacheHits;
+
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(db.getHelpItem("Cached"));
+        }
+
+        assertTrue("Repeated lookups should hit the statement cache",
+                db.getConnectionPoolStats().statementCacheHits >= hitsBefore + 10);
+    }
+
+    /*
+        TEST: BULK IMPORT OF HELP ITEMS
+    */
+    @Test
+    public void testBulkImportHelpItems() throws Exception {
+        List<helpItem> items = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            items.add(new helpItem(0, "Bulk " + i, "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group"));
+        }
+
+        DatabaseUtil.BulkImportResult result = db.addHelpItems(items, 10);
+
+        assertEquals(25, result.getRowCount());
+        assertEquals(25, new HashSet<>(result.ids).size());
+        assertEquals(25, db.getAllHelpItems().size());
+        assertEquals(result.ids.get(24), db.getHelpItem("Bulk 24").getId());
+    }
+
+    /*
+        TEST: COMPRESSED HELP ITEM BACKUP
+    */
+    @Test
+    public void testCompressedHelpItemBackup() throws Exception {
+        db.addHelpItem("Backup, quoted \"title\"", "Line one\nLine two", null, "Author", "Keyword", "Ref", "Beginner", "Group");
+        File file = File.createTempFile("helpitems", ".csv.gz");
+        file.deleteOnExit();
+
+        BackupWriter.Stats stats = db.backupHelpItemsToFile(file.getPath(), true);
+
+        assertEquals(3, stats.records);
+        assertTrue(stats.bytesWritten < stats.uncompressedBytes);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), "UTF-8"))) {
+            assertEquals("#helpsystem_backup,1,helpsystem_helpitems", reader.readLine());
+            assertTrue(reader.readLine().startsWith("id,title,description"));
+            assertTrue(reader.readLine().contains(",\"Backup, quoted \"\"title\"\"\",\"Line one"));
+            assertEquals("Line two\",\\N,Author,Keyword,Ref,Beginner,Group", reader.readLine());
+        }
+    }
+
+    /*
+        TEST: RESTORE HELP ITEMS FROM A BACKUP
+    */
+    @Test
+    public void testRestoreHelpItems() throws Exception {
+        db.addHelpItem("First", "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group");
+        db.addHelpItem("Second", "Desc, with comma", null, "Author", "Keyword", "Ref", "Beginner", "Group");
+        File file = File.createTempFile("helpitems", ".csv.gz");
+        file.deleteOnExit();
+        db.backupHelpItemsToFile(file.getPath(), true);
+
+        db.deleteHelpItem("Second");
+        db.addHelpItem("Third", "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group");
+        DatabaseUtil.RestoreResult merged = db.restoreHelpItemsFromFile(file.getPath(), DatabaseUtil.RestoreMode.MERGE);
+        assertEquals(1, merged.restored);
+        assertEquals(1, merged.skipped);
+        assertEquals(3, db.getAllHelpItems().size());
+        assertEquals("Desc, with comma", db.getHelpItem("Second").getDescription());
+
+        DatabaseUtil.RestoreResult replaced = db.restoreHelpItemsFromFile(file.getPath(), DatabaseUtil.RestoreMode.REPLACE);
+        assertEquals(2, replaced.restored);
+        assertEquals(2, db.getAllHelpItems().size());
+        assertNull(db.getHelpItem("Third"));
+        assertNull(db.getHelpItem("Second").getShortDescription());
+
+        // New help items get ids after the restored ones
+        db.addHelpItem("Fourth", "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group");
+        assertTrue(db.getHelpItem("Fourth").getId() > db.getHelpItem("Second").getId());
+    }
+
+    /*
+        TEST: CIPHER ENGINE FROM SEVERAL THREADS
+    */
+    @Test
+    public void testCipherEngineConcurrentRoundTrip() throws Exception {
+        CipherEngine engine = new CipherEngine(new byte[24]);
+        Thread[] workers = new Thread[4];
+        boolean[] ok = new boolean[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            int index = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    boolean all = true;
+                    for (int n = 0; n < 200; n++) {
+                        byte[] plain = ("Article " + index + " revision " + n).getBytes("UTF-8");
+                        byte[] iv = new byte[16];
+                        iv[0] = (byte) n;
+                        all &= Arrays.equals(plain, engine.decrypt(engine.encrypt(plain, iv), iv));
+                    }
+                    ok[index] = all;
+                } catch (Exception e) {
+                    ok[index] = false;
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        for (boolean result : ok) {
+            assertTrue("Every thread should get its own text back", result);
+        }
+    }
+
+    /*
+        TEST: GROUP ARTICLES STORED AS BINARY PAYLOADS
+    */
+    @Test
+    public void testGroupArticlePayloadMigration() throws Exception {
+        String groupName = "Payload Group " + System.nanoTime();
+        db.createSpecialAccessGroup(groupName, "owner");
+        int groupId = -1;
+        for (Map<String, Object> group : db.getAllSpecialAccessGroups()) {
+            if (groupName.equals(group.get("group_name"))) {
+                groupId = (int) group.get("group_id");
+            }
+        }
+
+        // An article in the old Base64 text form
+        String content = "Legacy article";
+        byte[] iv = EncryptionUtils.getInitializationVector(content.toCharArray());
+        byte[] encrypted = new EncryptionHelper().encrypt(EncryptionUtils.toByteArray(content.toCharArray()), iv);
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "INSERT INTO group_articles (article_id, group_id, encrypted_content) VALUES (1, ?, ?)")) {
+            pstmt.setInt(1, groupId);
+            pstmt.setString(2, Base64.getEncoder().encodeToString(iv) + ":" + Base64.getEncoder().encodeToString(encrypted));
+            pstmt.executeUpdate();
+        }
+        db.addArticleToGroup(groupId, 2, "New article");
+
+        assertEquals(1, db.migrateGroupArticlePayloads());
+        assertEquals(content, db.getGroupArticleContent(groupId, 1, "owner"));
+        assertEquals("New article", db.getGroupArticleContent(groupId, 2, "owner"));
+        db.deleteSpecialAccessGroup(groupId);
+    }
+
+    /*
+        TEST: DECRYPTED ARTICLE CACHE EVICTION AND INVALIDATION
+    */
+    @Test
+    public void testArticleCache() {
+        ArticleCache cache = new ArticleCache(1000);
+        String article = "x".repeat(200); // about 500 bytes with the entry overhead
+
+        cache.put(1, 1, article, cache.getGeneration());
+        cache.put(1, 2, article, cache.getGeneration());
+        assertNotNull(cache.get(1, 1));
+        cache.put(2, 1, article, cache.getGeneration());
+        assertNull("Least recently read article should be evicted", cache.get(1, 2));
+        assertNotNull(cache.get(1, 1));
+
+        cache.invalidateGroup(1);
+        assertNull(cache.get(1, 1));
+        assertNotNull(cache.get(2, 1));
+
+        long generation = cache.getGeneration();
+        cache.invalidate(2, 1);
+        cache.put(2, 1, article, generation);
+        assertNull("A load that raced with an invalidation must not be cached", cache.get(2, 1));
+    }
+
+    /*
+        TEST: PERMISSION INDEX STAYS IN SYNC WITH CHANGES
+    */
+    @Test
+    public void testPermissionIndexCoherence() throws Exception {
+        String groupName = "Permission Group " + System.nanoTime();
+        db.createSpecialAccessGroup(groupName, "owner");
+        int groupId = -1;
+        for (Map<String, Object> group : db.getAllSpecialAccessGroups()) {
+            if (groupName.equals(group.get("group_name"))) {
+                groupId = (int) group.get("group_id");
+            }
+        }
+
+        // Load the student into the index before they get access
+        assertFalse(db.hasViewPermission(groupId, "student"));
+        db.addStudentToGroup(groupId, "student");
+        assertTrue(db.hasViewPermission(groupId, "student"));
+        assertTrue(db.getUserViewGroups("student").contains(groupId));
+        assertFalse(db.hasAdminPermission(groupId, "student"));
+
+        db.removeViewerFromGroup(groupId, "student");
+        assertFalse(db.hasViewPermission(groupId, "student"));
+
+        assertTrue(db.hasAdminPermission(groupId, "owner"));
+        db.deleteSpecialAccessGroup(groupId);
+        assertFalse(db.hasAdminPermission(groupId, "owner"));
+        assertFalse(db.getUserAdminGroups("owner").contains(groupId));
+    }
+
+    /*
+        TEST: HOT QUERIES USE INDEXES
+    */
+    @Test
+    public void testHotQueriesUseIndexes() throws Exception {
+        assertEquals("No hot query should scan a whole table", Collections.emptyList(), db.checkQueryPlans());
+    }
+
+    /*
+        TEST: ROLES ARE STORED ONE ROW PER ROLE
+    */
+    @Test
+    public void testUserRoles() throws Exception {
+        String username = "roles" + System.nanoTime();
+        db.register(username, "password", "Student");
+        assertTrue(db.isStudent(username));
+        assertFalse(db.isInstructor(username));
+
+        db.addRoleToUser(username, "Instructor");
+        assertTrue(db.isInstructor(username));
+        assertEquals(Arrays.asList("instructor", "student"), db.getUserRoles(username));
+
+        db.removeRoleFromUser(username, "Instructor");
+        assertFalse(db.isInstructor(username));
+        assertEquals(Arrays.asList("student"), db.getUserRoles(username));
+
+        // Removing a role the user does not have changes nothing and tells nobody
+        List<DatabaseEvent.UserRoleChanged> changes = new ArrayList<>();
+        DatabaseEventBus.Subscription roles = db.getEventBus().subscribe(DatabaseEvent.UserRoleChanged.class, changes::add);
+        try {
+            db.removeRoleFromUser(username, "Admin");
+        } finally {
+            roles.close();
+        }
+        assertTrue(changes.isEmpty());
+        assertEquals(Arrays.asList("student"), db.getUserRoles(username));
+
+        db.deleteUserAccount(username);
+        assertTrue(db.getUserRoles(username).isEmpty());
+    }
+
+    /*
+        TEST: ASYNC DATABASE CALLS COMPLETE ON THE CALLBACK THREAD
+    */
+    @Test
+    public void testAsyncDatabaseUtil() throws Exception {
+        ExecutorService callbacks = Executors.newSingleThreadExecutor(r -> new Thread(r, "callbacks"));
+        try (AsyncDatabaseUtil async = new AsyncDatabaseUtil(db, callbacks)) {
+            List<helpItem> items = new ArrayList<>();
+            for (int i = 0; i < 2500; i++) {
+                items.add(new helpItem(0, "Async " + i, "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group"));
+            }
+            List<String> progressThreads = new CopyOnWriteArrayList<>();
+            long[] lastProgress = new long[2];
+            DatabaseUtil.BulkImportResult result = async.addHelpItems(items, (done, total) -> {
+                progressThreads.add(Thread.currentThread().getName());
+                lastProgress[0] = done;
+                lastProgress[1] = total;
+            }).get(30, TimeUnit.SECONDS);
+            assertEquals(2500, result.getRowCount());
+
+            assertEquals(2500, lastProgress[0]);
+            assertEquals(2500, lastProgress[1]);
+            assertTrue(progressThreads.stream().allMatch("callbacks"::equals));
+
+            // Hold the call until the continuation is attached, so it must run where the future completes
+            CountDownLatch attached = new CountDownLatch(1);
+            CompletableFuture<String> thread = async.submit(database -> {
+                attached.await();
+                return database.getAllHelpItems();
+            }).thenApply(all -> Thread.currentThread().getName());
+            attached.countDown();
+            assertEquals("callbacks", thread.get(30, TimeUnit.SECONDS));
+
+            // Searches and user changes run on a worker too
+            String searchThread = async.search(index -> index.searchTitles("async 2499").isEmpty() ? null : Thread.currentThread().getName())
+                    .get(30, TimeUnit.SECONDS);
+            assertNotNull(searchThread);
+            assertNotEquals("callbacks", searchThread);
+            String username = "async" + System.nanoTime();
+            db.register(username, "password", "Student");
+            async.addRoleToUser(username, "Instructor").get(30, TimeUnit.SECONDS);
+            assertTrue(db.isInstructor(username));
+            async.deleteUserAccount(username).get(30, TimeUnit.SECONDS);
+            assertTrue(db.getUserRoles(username).isEmpty());
+
+            try {
+                async.submit(database -> { throw new SQLException("boom"); }).get();
+                fail("The call should have failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SQLException);
+            }
+        } finally {
+            callbacks.shutdown();
+        }
+    }
+
+    /*
+        TEST: KEYSET PAGES OF HELP ITEMS
+    */
+    @Test
+    public void testHelpItemPages() throws Exception {
+        List<helpItem> items = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            items.add(new helpItem(0, (i % 2 == 0 ? "Even 100% " : "Odd ") + i, "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group"));
+        }
+        db.addHelpItems(items);
+
+        DatabaseUtil.HelpItemPageIndex index = db.getHelpItemPageIndex(100, null);
+        assertEquals(250, index.total);
+        assertEquals(3, index.firstIds.length);
+
+        List<DatabaseUtil.HelpItemSummary> last = db.getHelpItemPage(index.firstIds[2] - 1, 100);
+        assertEquals(50, last.size());
+        assertEquals("Odd 249", last.get(49).title);
+        assertTrue(db.getHelpItemPage(last.get(49).id, 100).isEmpty());
+
+        // The filter matches titles containing it, ignoring case and treating % as a plain character
+        assertEquals(125, db.getHelpItemPageIndex(100, "even 100%").total);
+        assertEquals(0, db.getHelpItemPageIndex(100, "even 1000").total);
+        assertEquals("Even 100% 2", db.getHelpItemPage(0, 2, "EVEN").get(1).title);
+    }
+
+    /*
+        TEST: DATABASE EVENTS
+    */
+    @Test
+    public void testDatabaseEvents() throws Exception {
+        List<String> events = new ArrayList<>();
+        List<String> userEvents = new ArrayList<>();
+        DatabaseEventBus bus = db.getEventBus();
+        DatabaseEventBus.Subscription all = bus.subscribe(DatabaseEvent.class, event -> events.add(event.toString()));
+        DatabaseEventBus.Subscription users = bus.subscribe(DatabaseEvent.UserDeleted.class, event -> userEvents.add(event.username));
+        String username = "events" + System.nanoTime();
+        int id;
+        try {
+            db.addHelpItem("Published", "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group");
+            id = db.getHelpItem("Published").getId();
+            db.updateHelpItem(id, new helpItem(id, "Published again", "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group"));
+            db.deleteHelpItem("Published again");
+
+            db.register(username, "password", "Student");
+            db.addRoleToUser(username, "Instructor");
+            db.deleteUserAccount(username);
+        } finally {
+            all.close();
+            users.close();
+        }
+
+        assertEquals(Arrays.asList(
+                "HelpItemAdded " + id,
+                "HelpItemUpdated " + id,
+                "HelpItemDeleted Published again",
+                "UserAdded " + username,
+                "UserRoleChanged " + username + " +instructor",
+                "UserDeleted " + username), events);
+        assertEquals(Collections.singletonList(username), userEvents);
+
+        db.addHelpItem("Not published", "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group");
+        assertEquals(6, events.size());
+    }
+
+    /*
+        TEST: HTTP API SERVER
+    */
+    @Test
+    public void testHelpSystemServer() throws Exception {
+        db.addHelpItem("Served item", "Served \"description\"", "Short", "Author", "Keyword", "Ref", "Beginner", "Group");
+        int id = db.getHelpItem("Served item").getId();
+        try (HelpSystemServer server = new HelpSystemServer(db, new InetSocketAddress("localhost", 0))) {
+            server.start();
+            String base = "http://localhost:" + server.getPort();
+
+            HttpURLConnection search = (HttpURLConnection) new URL(base + "/api/search?q=served").openConnection();
+            assertEquals(200, search.getResponseCode());
+            String results = new String(search.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(results.contains("{\"id\":" + id + ",\"title\":\"Served item\""));
+
+            HttpURLConnection article = (HttpURLConnection) new URL(base + "/api/articles/" + id).openConnection();
+            assertEquals(200, article.getResponseCode());
+            String body = new String(article.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(body.contains("\"description\":\"Served \\\"description\\\"\""));
+
+            HttpURLConnection missing = (HttpURLConnection) new URL(base + "/api/articles/" + (id + 1000)).openConnection();
+            assertEquals(404, missing.getResponseCode());
+
+            HttpURLConnection unauthorized = (HttpURLConnection) new URL(base + "/api/groups/1/articles/1").openConnection();
+            assertEquals(401, unauthorized.getResponseCode());
+
+            HttpURLConnection login = (HttpURLConnection) new URL(base + "/api/login").openConnection();
+            login.setRequestMethod("POST");
+            login.setDoOutput(true);
+            login.getOutputStream().write("username=nobody&password=wrong".getBytes(StandardCharsets.UTF_8));
+            assertEquals(401, login.getResponseCode());
+        }
+    }
+
+    /*
+        TEST: PASSWORD HASHING
+    */
+    @Test
+    public void testPasswordHashing() throws Exception {
+        db.setPasswordHasher(new PasswordHasher(1000, 1, 16));
+        String username = "hashed" + System.nanoTime();
+        try {
+            db.register(username, "secret", "Student");
+            String stored = db.getUserByUsername(username).getPassword();
+            assertTrue(PasswordHasher.isHashed(stored));
+            assertFalse(stored.contains("secret"));
+            assertTrue(db.login(username, "secret"));
+            assertFalse(db.login(username, "wrong"));
+            assertFalse(db.login("missing" + System.nanoTime(), "secret"));
+
+            // A cost change is applied on the next successful login
+            db.setPasswordHasher(new PasswordHasher(2000, 1, 16));
+            assertTrue(db.getPasswordHasher().needsRehash(stored));
+            assertTrue(db.login(username, "secret"));
+            String rehashed = db.getUserByUsername(username).getPassword();
+            assertNotEquals(stored, rehashed);
+            assertFalse(db.getPasswordHasher().needsRehash(rehashed));
+            assertTrue(db.login(username, "secret"));
+        } finally {
+            db.deleteUserAccount(username);
+        }
+
+        PasswordHasher hasher = new PasswordHasher(1000, 1, 16);
+        assertTrue("Plain text passwords from before hashing still log in", hasher.verify("plain", "plain"));
+        assertTrue(hasher.needsRehash("plain"));
+        hasher.close();
+    }
+
+    /*
+        TEST: DATABASE METRICS
+    */
+    @Test
+    public void testDatabaseMetrics() throws Exception {
+        db.addHelpItem("Measured", "Desc", "Short", "Author", "Keyword", "Ref", "Beginner", "Group");
+        DatabaseMetrics metrics = db.getMetrics();
+        long before = metrics.get("getHelpItem") == null ? 0 : metrics.get("getHelpItem").getCalls();
+        db.getHelpItem("Measured");
+        db.getHelpItem("Measured");
+        DatabaseMetrics.CallStats stats = metrics.get("getHelpItem");
+        assertEquals(before + 2, stats.getCalls());
+        assertTrue(stats.getRows() >= 2);
+        assertTrue(stats.getMaxMillis() > 0);
+
+        long errors = metrics.get("updateHelpItem") == null ? 0 : metrics.get("updateHelpItem").getErrors();
+        try {
+            db.updateHelpItem(1, null);
+            fail("Updating with no help item should fail");
+        } catch (RuntimeException expected) {
+        }
+        assertEquals(errors + 1, metrics.get("updateHelpItem").getErrors());
+
+        assertTrue(metrics.snapshot().contains("getHelpItem"));
+        assertEquals(1, ManagementFactory.getPlatformMBeanServer()
+                .queryNames(new ObjectName("application:type=DatabaseMetrics,name=getHelpItem,*"), null).size());
+    }
+
+    /*
+        TEST: SCHEMA VERSIONING
+    */
+    @Test
+    public void testSchemaVersioning() throws Exception {
+        SchemaMigrator.Result current = db.migrateSchema();
+        assertTrue("A connected database is already current", current.applied.isEmpty());
+        assertEquals(current.fromVersion, current.toVersion);
+
+        Path directory = Files.createTempDirectory("helpsystem-schema");
+        DatabaseUtil fresh = new DatabaseUtil("jdbc:h2:" + directory.resolve("db").toAbsolutePath());
+        try {
+            fresh.connectToDatabase();
+            SchemaMigrator.Result again = fresh.migrateSchema();
+            assertTrue(again.applied.isEmpty());
+            assertEquals(current.toVersion, again.toVersion);
+
+            // Resetting empties the tables but keeps the schema and its version
+            fresh.register("schema", "password", "Student");
+            fresh.resetUserDatabase();
+            assertTrue(fresh.isDBEmpty());
+            assertTrue(fresh.migrateSchema().applied.isEmpty());
+        } finally {
+            fresh.closeConnection();
+        }
+    }
+
+    /*
+        TEST: GCM ARTICLE PAYLOADS
+    */
+    @Test
+    public void testGcmArticlePayloads() throws Exception {
+        String groupName = "GCM Group " + System.nanoTime();
+        db.createSpecialAccessGroup(groupName, "owner");
+        int groupId = -1;
+        for (Map<String, Object> group : db.getAllSpecialAccessGroups()) {
+            if (groupName.equals(group.get("group_name"))) {
+                groupId = (int) group.get("group_id");
+            }
+        }
+
+        // An article written as a CBC payload before GCM existed
+        String content = "CBC article";
+        byte[] iv = EncryptionUtils.getInitializationVector(content.toCharArray());
+        byte[] encrypted = new EncryptionHelper().encrypt(EncryptionUtils.toByteArray(content.toCharArray()), iv);
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "INSERT INTO group_articles (article_id, group_id, payload) VALUES (1, ?, ?)")) {
+            pstmt.setInt(1, groupId);
+            pstmt.setBytes(2, EncryptedPayload.encode(iv, encrypted));
+            pstmt.executeUpdate();
+        }
+        db.addArticleToGroup(groupId, 2, "GCM article");
+        db.addArticleToGroup(groupId, 3, "GCM article");
+
+        byte[][] payloads = new byte[4][];
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT article_id, payload FROM group_articles WHERE group_id = ?")) {
+            pstmt.setInt(1, groupId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    payloads[rs.getInt(1)] = rs.getBytes(2);
+                }
+            }
+        }
+        assertEquals(EncryptedPayload.VERSION_GROUP_KEY, payloads[2][0]);
+        assertFalse("The same text must not encrypt the same way twice", Arrays.equals(payloads[2], payloads[3]));
+        assertEquals(content, db.getGroupArticleContent(groupId, 1, "owner"));
+        assertEquals("GCM article", db.getGroupArticleContent(groupId, 2, "owner"));
+
+        // A changed byte is caught by the tag instead of decrypting to garbage
+        payloads[3][payloads[3].length - 1] ^= 1;
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "INSERT INTO group_articles (article_id, group_id, payload) VALUES (4, ?, ?)")) {
+            pstmt.setInt(1, groupId);
+            pstmt.setBytes(2, payloads[3]);
+            pstmt.executeUpdate();
+        }
+        try {
+            db.getGroupArticleContent(groupId, 4, "owner");
+            fail("A tampered article should not decrypt");
+        } catch (AEADBadTagException expected) {
+        }
+    }
+
+    /*
+        TEST: PER-GROUP KEYS AND KEY ROTATION
+    */
+    @Test
+    public void testGroupKeyRotation() throws Exception {
+        String groupName = "Rotation Group " + System.nanoTime();
+        db.createSpecialAccessGroup(groupName, "owner");
+        int groupId = -1;
+        for (Map<String, Object> group : db.getAllSpecialAccessGroups()) {
+            if (groupName.equals(group.get("group_name"))) {
+                groupId = (int) group.get("group_id");
+            }
+        }
+        for (int i = 0; i < 300; i++) {
+            db.addArticleToGroup(groupId, i, "Article " + i);
+        }
+
+        assertEquals(2, db.rotateGroupKey(groupId));
+        KeyRotationJob.Progress progress = db.startKeyRotation(0).get(1, TimeUnit.MINUTES);
+        assertTrue(progress.finished);
+        assertTrue(progress.rotated >= 300);
+        assertEquals(0, progress.failed);
+
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT payload FROM group_articles WHERE group_id = ?")) {
+            pstmt.setInt(1, groupId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    EncryptedPayload header = EncryptedPayload.readHeader(rs.getBinaryStream(1));
+                    assertEquals(EncryptedPayload.VERSION_GROUP_KEY, header.getVersion());
+                    assertEquals(2, header.getKeyVersion());
+                }
+            }
+        }
+        assertEquals("Article 0", db.getGroupArticleContent(groupId, 0, "owner"));
+        assertEquals("Article 299", db.getGroupArticleContent(groupId, 299, "owner"));
+
+        // Nothing is left to do, a second run only checks
+        assertEquals(0, db.startKeyRotation(0).get(1, TimeUnit.MINUTES).rotated);
+        db.deleteSpecialAccessGroup(groupId);
+    }
+
+    /*
+        TEST: RANKED FULL TEXT SEARCH
+    */
+    @Test
+    public void testRankedSearch() {
+        HelpItemSearchIndex index = new HelpItemSearchIndex();
+        List<helpItem> items = new ArrayList<>();
+        items.add(new helpItem(1, "Loops", "A loop repeats statements, see recursion", "Repeating code", "Ann", "iteration", "", "Beginner", "Group"));
+        items.add(new helpItem(2, "Recursion", "A method that calls itself", "Self calls", "Bob", "methods", "", "Intermediate", "Group"));
+        items.add(new helpItem(3, "Stacks", "Recursion uses the call stack", "Call stack", "Cy", "recursion memory", "", "Advanced", "Group"));
+        for (int i = 4; i <= 40; i++) {
+            items.add(new helpItem(i, "Filler " + i, "Nothing about the topic", "Filler", "Dee", "filler", "", "Beginner", "Group"));
+        }
+        index.rebuild(items);
+
+        // A title match beats a keyword match, which beats a description match
+        HelpItemSearchIndex.Ranking ranking = index.rank("recursion", 10);
+        assertEquals(3, ranking.total);
+        assertEquals(2, ranking.hits.get(0).id);
+        assertEquals(3, ranking.hits.get(1).id);
+        assertEquals(1, ranking.hits.get(2).id);
+        assertTrue(ranking.hits.get(0).score > ranking.hits.get(1).score);
+
+        // Words only in the description are found, and the last word may be unfinished
+        assertEquals(2, index.rank("itself", 10).hits.get(0).id);
+        assertEquals(2, index.rank("method cal", 10).hits.get(0).id);
+
+        // Only limit hits come back, but total counts every match
+        ranking = index.rank("filler", 5);
+        assertEquals(37, ranking.total);
+        assertEquals(5, ranking.hits.size());
+        assertEquals(4, ranking.hits.get(0).id);
+
+        index.remove(2);
+        assertEquals(2, index.rank("recursion", 10).total);
+        assertTrue(index.rank("nonexistent", 10).hits.isEmpty());
+    }
+
+    /*
+        TEST: PREFIX COMPLETIONS ARE CAPPED
+    */
+    @Test
+    public void testPrefixCompletionCap() {
+        HelpItemSearchIndex index = new HelpItemSearchIndex();
+        List<helpItem> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String term = String.format("pre%03d", i);
+            items.add(new helpItem(i + 1, "Article " + i, "Nothing else", "Filler", "Ann", term, "", "Beginner", "Group"));
+        }
+        index.rebuild(items);
+
+        // Only the first MAX_PREFIX_TERMS completions, alphabetically, are scored
+        HelpItemSearchIndex.Ranking ranking = index.rank("pre", 200);
+        assertEquals(HelpItemSearchIndex.MAX_PREFIX_TERMS, ranking.total);
+        for (HelpItemSearchIndex.Hit hit : ranking.hits) {
+            assertTrue(hit.id <= HelpItemSearchIndex.MAX_PREFIX_TERMS);
+        }
+
+        // The word itself still matches past the cap, and beats its completions
+        index.add(new helpItem(101, "Article 100", "Nothing else", "Filler", "Ann", "pre", "", "Beginner", "Group"));
+        ranking = index.rank("pre", 200);
+        assertEquals(HelpItemSearchIndex.MAX_PREFIX_TERMS + 1, ranking.total);
+        assertEquals(101, ranking.hits.get(0).id);
+    }
+
+    /*
+        TEST: TYPO TOLERANT SEARCH
+    */
+    @Test
+    public void testFuzzySearch() {
+        assertEquals(0, HelpItemSearchIndex.boundedDistance("recursion", "recursion", 2));
+        assertEquals(1, HelpItemSearchIndex.boundedDistance("recusion", "recursion", 2));
+        assertEquals(2, HelpItemSearchIndex.boundedDistance("recrusion", "recursion", 2));
+        assertEquals(2, HelpItemSearchIndex.boundedDistance("kitten", "sitting", 1));
+        assertEquals(3, HelpItemSearchIndex.boundedDistance("abc", "abcdefg", 2));
+
+        HelpItemSearchIndex index = new HelpItemSearchIndex();
+        List<helpItem> items = new ArrayList<>();
+        items.add(new helpItem(1, "Recursion", "A method that calls itself", "Self calls", "Ann", "methods", "", "Beginner", "Group"));
+        items.add(new helpItem(2, "Polymorphism", "Many forms", "Overriding", "Bob", "inheritance", "", "Beginner", "Group"));
+        items.add(new helpItem(3, "Stacks", "Explains recursion", "Call stack", "Cy", "memory", "", "Beginner", "Group"));
+        items.add(new helpItem(4, "Java", "The language", "Basics", "Dee", "jvm", "", "Beginner", "Group"));
+        index.rebuild(items);
+
+        // Misspelled words find the titles and keywords they are close to, and nothing else
+        assertEquals(List.of("Recursion"), index.fuzzyTitles("recusion", 10));
+        assertEquals(List.of("Polymorphism"), index.fuzzyTitles("polymorphsm", 10));
+        assertEquals(List.of("Polymorphism"), index.fuzzyTitles("inheritence", 10));
+        assertTrue(index.fuzzyTitles("nonsense", 10).isEmpty());
+
+        // An exact match beats a near one, and short words are only matched exactly
+        index.add(new helpItem(5, "Recursions", "Plural", "More", "Eve", "methods", "", "Beginner", "Group"));
+        assertEquals(List.of("Recursion", "Recursions"), index.fuzzyTitles("recursion", 10));
+        assertEquals(List.of("Java"), index.fuzzyTitles("java", 10));
+        assertTrue(index.fuzzyTitles("jav", 10).isEmpty());
+
+        // A deleted help item's terms can no longer be corrected to
+        index.remove(2);
+        assertTrue(index.fuzzyTitles("polymorphsm", 10).isEmpty());
+        assertEquals(2, index.fuzzy("recusion methods", 10).total);
+    }
+
+    /*
+        TEST: GROUP ARTICLE BACKUPS CARRY THEIR GROUP KEYS
+    */
+    @Test
+    public void testSpecialAccessBackupWithGroupKeys() throws Exception {
+        String groupName = "Backup Keys Group " + System.nanoTime();
+        db.createSpecialAccessGroup(groupName, "owner");
+        int groupId = -1;
+        for (Map<String, Object> group : db.getAllSpecialAccessGroups()) {
+            if (groupName.equals(group.get("group_name"))) {
+                groupId = (int) group.get("group_id");
+            }
+        }
+        db.addArticleToGroup(groupId, 1, "Under the first key");
+        db.rotateGroupKey(groupId);
+        db.addArticleToGroup(groupId, 2, "Under the second key");
+        File file = File.createTempFile("groupArticles", ".csv");
+        file.deleteOnExit();
+        db.backupSpecialAccessItemsToFile(file.getPath(), false);
+
+        // Deleting the group deletes its keys, the backup brings them back
+        recreateGroup(groupId, groupName);
+        db.restoreSpecialAccessItemsFromFile(file.getPath(), DatabaseUtil.RestoreMode.MERGE);
+        assertEquals("Under the first key", db.getGroupArticleContent(groupId, 1, "owner"));
+        assertEquals("Under the second key", db.getGroupArticleContent(groupId, 2, "owner"));
+
+        // Without the keys, as in backups from before they were written, the articles are skipped
+        File keyless = File.createTempFile("groupArticlesKeyless", ".csv");
+        keyless.deleteOnExit();
+        try (BackupReader reader = new BackupReader(file.toPath());
+             BackupWriter writer = new BackupWriter(keyless.toPath(), false)) {
+            writer.writeRecord((Object[]) reader.readRecord());
+            writer.writeRecord("article_id", "group_id", "payload");
+            reader.readRecord();
+            for (String[] record = reader.readRecord(); record != null; record = reader.readRecord()) {
+                writer.writeRecord(record[0], record[1], record[2]);
+            }
+        }
+        recreateGroup(groupId, groupName);
+        DatabaseUtil.RestoreResult result = db.restoreSpecialAccessItemsFromFile(keyless.getPath(), DatabaseUtil.RestoreMode.MERGE);
+        assertTrue(result.skipped >= 2);
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM group_articles WHERE group_id = ?")) {
+            pstmt.setInt(1, groupId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+        db.deleteSpecialAccessGroup(groupId);
+    }
+
+    /* Delete a group with its articles and keys, then create it again under the same id */
+    private void recreateGroup(int groupId, String groupName) throws Exception {
+        db.deleteSpecialAccessGroup(groupId);
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "INSERT INTO special_access_groups (group_id, group_name, created_by) VALUES (?, ?, 'owner')")) {
+            pstmt.setInt(1, groupId);
+            pstmt.setString(2, groupName);
+            pstmt.executeUpdate();
+        }
+        db.addGroupPermission(groupId, "owner", "VIEW");
+    }
+}
@@ -0,0 +1,342 @@
+package application;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> KeyRotationJob </p>
+ *
+ * <p> Description: Re-encrypts every group article that is not under its group's latest data key,
+ * while the application keeps serving reads. It walks group_articles in primary key order, one chunk
+ * at a time: the chunk is read, its rows are decrypted and encrypted again on a fork-join pool, and
+ * the new payloads are written in one transaction together with the checkpoint, the key of the last
+ * row done. After a crash the job carries on from that checkpoint. Each row is replaced only if its
+ * payload is still the one that was read, so an article written or removed meanwhile is left as it
+ * is; every row is always either the old or the new payload, and both can be read, since old key
+ * versions are kept. The job can be throttled to a number of rows per second so it does not take
+ * the database from the users, and stopped between chunks. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class KeyRotationJob {
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    // Rows a fork-join task re-encrypts itself instead of splitting further
+    private static final int SPLIT_THRESHOLD = 16;
+
+    /* Re-encrypts one payload under the group's latest key; null when it already is under that key */
+    public interface Reencrypter {
+        byte[] reencrypt(int groupId, byte[] payload) throws Exception;
+    }
+
+    /* How far the job has got; the counts include what was done before a resume */
+    public static class Progress {
+        public final int jobId;
+        public final long total;
+        public final long processed;
+        public final long rotated;
+        public final long failed;
+        public final long elapsedNanos;
+        public final boolean finished;
+
+        Progress(int jobId, long total, long processed, long rotated, long failed, long elapsedNanos, boolean finished) {
+            this.jobId = jobId;
+            this.total = total;
+            this.processed = processed;
+            this.rotated = rotated;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.finished = finished;
+        }
+
+        public double getPercentDone() {
+            return finished || total == 0 ? 100 : Math.min(100, processed * 100.0 / total);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("key rotation %d: %d of %d articles checked (%.0f%%), %d re-encrypted, %d failed in %.1f ms%s",
+                    jobId, processed, total, getPercentDone(), rotated, failed, elapsedNanos / 1_000_000.0,
+                    finished ? ", finished" : "");
+        }
+    }
+
+    /* One row of a chunk and what it becomes */
+    private static final class Row {
+        final int articleId;
+        final int groupId;
+        final byte[] payload;
+        byte[] replacement;
+        boolean failed;
+
+        Row(int articleId, int groupId, byte[] payload) {
+            this.articleId = articleId;
+            this.groupId = groupId;
+            this.payload = payload;
+        }
+    }
+
+    /* Splits a chunk in halves until the pieces are small enough to re-encrypt directly */
+    private final class ReencryptRows extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient List<Row> rows;
+        private final int from;
+        private final int to;
+
+        ReencryptRows(List<Row> rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    Row row = rows.get(i);
+                    try {
+                        row.replacement = reencrypter.reencrypt(row.groupId, row.payload);
+                    } catch (Exception e) {
+                        // One unreadable article must not hold up the rest, it is counted and left as it is
+                        row.failed = true;
+                        System.err.println("Could not re-encrypt article " + row.articleId + " of group " + row.groupId + ": " + e);
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ReencryptRows(rows, from, middle), new ReencryptRows(rows, middle, to));
+        }
+    }
+
+    private final ConnectionSource connections;
+    private final Reencrypter reencrypter;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int maxRowsPerSecond;
+    private volatile boolean stopRequested;
+    private volatile Progress progress;
+
+    /* maxRowsPerSecond of 0 means as fast as the pool goes */
+    public KeyRotationJob(ConnectionSource connections, Reencrypter reencrypter,
+                          int chunkSize, int parallelism, int maxRowsPerSecond) {
+        if (chunkSize < 1 || parallelism < 1 || maxRowsPerSecond < 0) {
+            throw new IllegalArgumentException("chunkSize and parallelism must be positive, maxRowsPerSecond not negative");
+        }
+        this.connections = connections;
+        this.reencrypter = reencrypter;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.progress = new Progress(0, 0, 0, 0, 0, 0, false);
+    }
+
+    /* Whether a run was left unfinished, by a crash or a stop, and should be resumed */
+    public static boolean hasUnfinished(ConnectionSource connections) throws SQLException {
+        try (Connection conn = connections.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM key_rotation_jobs WHERE finished_at IS NULL")) {
+            return rs.next();
+        }
+    }
+
+    /* The progress so far; safe to call from any thread while the job runs */
+    public Progress getProgress() {
+        return progress;
+    }
+
+    /* Stop after the chunk being worked on; run returns and the next run resumes from there */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Run until every article has been checked or stop is called, resuming an unfinished run if
+     * there is one. Returns the final progress.
+     */
+    public Progress run() throws SQLException {
+        long start = System.nanoTime();
+        int[] cursor = {Integer.MIN_VALUE, Integer.MIN_VALUE}; // article_id, group_id of the last row done
+        long[] counts = new long[2]; // processed, rotated before this run
+        int jobId = resumeOrCreate(cursor, counts);
+        long processed = counts[0];
+        long rotated = counts[1];
+        long total = processed + countAfter(cursor);
+        AtomicLong failed = new AtomicLong();
+        long processedThisRun = 0;
+        progress = new Progress(jobId, total, processed, rotated, 0, 0, false);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            while (!stopRequested) {
+                List<Row> rows = readChunk(cursor);
+                if (!rows.isEmpty()) {
+                    pool.invoke(new ReencryptRows(rows, 0, rows.size()));
+                    Row last = rows.get(rows.size() - 1);
+                    cursor[0] = last.articleId;
+                    cursor[1] = last.groupId;
+                    for (Row row : rows) {
+                        if (row.failed) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                    rotated += writeChunk(jobId, rows, cursor, processed + rows.size(), rotated);
+                    processed += rows.size();
+                    processedThisRun += rows.size();
+                }
+                boolean done = rows.size() < chunkSize;
+                if (done) {
+                    finish(jobId);
+                }
+                progress = new Progress(jobId, Math.max(total, processed), processed, rotated, failed.get(),
+                        System.nanoTime() - start, done);
+                if (done) {
+                    break;
+                }
+                throttle(start, processedThisRun);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return progress;
+    }
+
+    /* Sleep as long as it takes to stay under maxRowsPerSecond since the run started */
+    private void throttle(long start, long processedThisRun) {
+        if (maxRowsPerSecond == 0) {
+            return;
+        }
+        long due = start + processedThisRun * 1_000_000_000L / maxRowsPerSecond;
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopRequested = true;
+            }
+        }
+    }
+
+    /* The unfinished run with its checkpoint and counts, or a new run starting at the first row */
+    private int resumeOrCreate(int[] cursor, long[] counts) throws SQLException {
+        try (Connection conn = connections.getConnection()) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT job_id, last_article_id, last_group_id, processed, rotated "
+                         + "FROM key_rotation_jobs WHERE finished_at IS NULL ORDER BY job_id DESC LIMIT 1")) {
+                if (rs.next()) {
+                    cursor[0] = rs.getInt(2);
+                    cursor[1] = rs.getInt(3);
+                    counts[0] = rs.getLong(4);
+                    counts[1] = rs.getLong(5);
+                    return rs.getInt(1);
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO key_rotation_jobs (last_article_id, last_group_id, updated_at) VALUES (?, ?, CURRENT_TIMESTAMP)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setInt(1, cursor[0]);
+                pstmt.setInt(2, cursor[1]);
+                pstmt.executeUpdate();
+                try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                    rs.next();
+                    return rs.getInt(1);
+                }
+            }
+        }
+    }
+
+    private long countAfter(int[] cursor) throws SQLException {
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT COUNT(*) FROM group_articles WHERE (article_id, group_id) > (?, ?)")) {
+            pstmt.setInt(1, cursor[0]);
+            pstmt.setInt(2, cursor[1]);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private List<Row> readChunk(int[] cursor) throws SQLException {
+        List<Row> rows = new ArrayList<>(chunkSize);
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT article_id, group_id, payload FROM group_articles WHERE (article_id, group_id) > (?, ?) "
+                             + "ORDER BY article_id, group_id LIMIT ?")) {
+            pstmt.setInt(1, cursor[0]);
+            pstmt.setInt(2, cursor[1]);
+            pstmt.setInt(3, chunkSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new Row(rs.getInt(1), rs.getInt(2), rs.getBytes(3)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /* Write the re-encrypted rows and move the checkpoint past them, all or nothing; returns the rows replaced */
+    private int writeChunk(int jobId, List<Row> rows, int[] cursor, long processed, long rotated) throws SQLException {
+        int replaced = 0;
+        try (Connection conn = connections.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement update = conn.prepareStatement(
+                         "UPDATE group_articles SET payload = ? WHERE article_id = ? AND group_id = ? AND payload = ?");
+                 PreparedStatement checkpoint = conn.prepareStatement(
+                         "UPDATE key_rotation_jobs SET last_article_id = ?, last_group_id = ?, processed = ?, rotated = ?, "
+                                 + "updated_at = CURRENT_TIMESTAMP WHERE job_id = ?")) {
+                boolean batched = false;
+                for (Row row : rows) {
+                    if (row.replacement != null) {
+                        update.setBytes(1, row.replacement);
+                        update.setInt(2, row.articleId);
+                        update.setInt(3, row.groupId);
+                        update.setBytes(4, row.payload);
+                        update.addBatch();
+                        batched = true;
+                    }
+                }
+                if (batched) {
+                    for (int count : update.executeBatch()) {
+                        replaced += count > 0 ? 1 : 0;
+                    }
+                }
+                checkpoint.setInt(1, cursor[0]);
+                checkpoint.setInt(2, cursor[1]);
+                checkpoint.setLong(3, processed);
+                checkpoint.setLong(4, rotated + replaced);
+                checkpoint.setInt(5, jobId);
+                checkpoint.executeUpdate();
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return replaced;
+    }
+
+    private void finish(int jobId) throws SQLException {
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "UPDATE key_rotation_jobs SET finished_at = CURRENT_TIMESTAMP, updated_at = CURRENT_TIMESTAMP WHERE job_id = ?")) {
+            pstmt.setInt(1, jobId);
+            pstmt.executeUpdate();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package application;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.scene.Node;
 import javafx.util.Pair;
@@ -11,14 +12,21 @@ import javafx.scene.control.Button;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import javafx.scene.layout.GridPane;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.control.ComboBox;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -48,6 +56,9 @@ public class MyJavaFXApp extends Application {
 
     public static String currentUser = "";
 
+    // Help items a full text search lists, best match first
+    private static final int FULL_TEXT_RESULTS = 50;
+
     /**
      * Create a DB instance to interact with the database
      */
@@ -61,6 +72,19 @@ public class MyJavaFXApp extends Application {
         }
     }
 
+    /**
+     * Runs database calls off the JavaFX Application Thread; results come back through Platform.runLater
+     */
+    private static final AsyncDatabaseUtil asyncDb = new AsyncDatabaseUtil(dbUtil, Platform::runLater);
+
+    /**
+     * Screens built since the user logged in, by name. Going back to one shows the same scene again
+     * instead of building it and querying its data from scratch; events from dbUtil keep their lists
+     * up to date meanwhile.
+     */
+    private final Map<String, Scene> sceneCache = new HashMap<>();
+    private final List<DatabaseEventBus.Subscription> sceneSubscriptions = new ArrayList<>();
+
     @Override
     public void start(Stage primaryStage) {
         try { //Attempt to connect to H2 DB
@@ -85,6 +109,31 @@ public class MyJavaFXApp extends Application {
         primaryStage.show();
     }
 
+    /* The cached scene with the given name, built the first time it is asked for */
+    private Scene cachedScene(String name, Supplier<Scene> build) {
+        Scene scene = sceneCache.get(name);
+        if (scene == null) {
+            scene = build.get();
+            sceneCache.put(name, scene);
+        }
+        return scene;
+    }
+
+    /* Receive database events on the JavaFX Application Thread, for as long as the cached scenes live */
+    private <E extends DatabaseEvent> void subscribe(Class<E> type, DatabaseEventBus.Subscriber<? super E> subscriber) {
+        sceneSubscriptions.add(dbUtil.getEventBus().subscribe(type, event -> Platform.runLater(() -> subscriber.on(event))));
+    }
+
+    /* Log out: forget the scenes of this session and their subscriptions, then show the login scene */
+    private Scene logOut(Stage primaryStage) {
+        for (DatabaseEventBus.Subscription subscription : sceneSubscriptions) {
+            subscription.close();
+        }
+        sceneSubscriptions.clear();
+        sceneCache.clear();
+        return createLoginScene(primaryStage);
+    }
+
     /**********
      * ADMIN SETUP COMPONENT
      * This is a Scene object (It's like Component in React)
@@ -283,15 +332,20 @@ public class MyJavaFXApp extends Application {
         loginButton.setOnAction(e -> {
             String username = userNameField.getText();
             String password = passwordField.getText();
-            try {
-                if (dbUtil.login(username, password)) {
+            loginButton.setDisable(true);
+            asyncDb.submit(db -> db.login(username, password) ? db.getUserByUsername(username) : null).whenComplete((user, error) -> {
+                loginButton.setDisable(false);
+                if (error instanceof PasswordHasher.OverloadedException) {
+                    errorMessage.setText("Too many people are logging in, please try again");
+                } else if (error != null) {
+                    error.printStackTrace();
+                } else if (user != null) {
                     errorMessage.setText("Login successful");
-                    User user = dbUtil.getUserByUsername(username);
 
                     // Proceed to the next scene or functionality
                     if (user.getRole().contains("Admin")) {
                         currentUser = "admin";
-                        primaryStage.setScene(adminScene(primaryStage));
+                        primaryStage.setScene(cachedScene("admin", () -> adminScene(primaryStage)));
                     } else if (user.getRole().contains("Student")) {
                         //Set other scene depending on user role
                         if (user.getFirstName().isEmpty() || user.getLastName().isEmpty() || user.getMiddleName().isEmpty()) {
@@ -300,20 +354,18 @@ public class MyJavaFXApp extends Application {
                             }
                         } else {
                             currentUser = "student";
-                            primaryStage.setScene(studentScene(primaryStage));
+                            primaryStage.setScene(cachedScene("student", () -> studentScene(primaryStage)));
                         }
                     } else if (user.getRole().contains("Instructor")) {
                         currentUser = "instructor";
-                        primaryStage.setScene(instructorScene(primaryStage));
+                        primaryStage.setScene(cachedScene("instructor", () -> instructorScene(primaryStage)));
                     } else {
                         System.out.println("Error finding a right role.");
                     }
                 } else {
                     errorMessage.setText("Invalid username or password");
                 }
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
+            });
         });
 
         // Reset database button, prompts user to confirm resetting database
@@ -531,6 +583,7 @@ public class MyJavaFXApp extends Application {
         // User List
         ListView<String> userListView = new ListView<>();
         updateUserListView(userListView);
+        watchUserListView(userListView);
         userListView.setPrefHeight(200);
         adminGrid.add(userListView, 0, 1, 2, 1);
 
@@ -545,6 +598,8 @@ public class MyJavaFXApp extends Application {
         Button logoutButton = new Button("Log Out");
         Button backupButton = new Button("Backup Articles");
         Button backupSpecialAccessButton = new Button("Backup Special Access Articles");
+        Button restoreButton = new Button("Restore Articles");
+        Button restoreSpecialAccessButton = new Button("Restore Special Access Articles");
 
 
         // Set preferred width for buttons
@@ -557,8 +612,8 @@ public class MyJavaFXApp extends Application {
         logoutButton.setPrefWidth(150);
 
         // Grouped button layout
-        VBox buttonGroup1 = new VBox(10, deleteUserButton, addRoleButton, removeRoleButton, logoutButton, backupButton);
-        VBox buttonGroup2 = new VBox(10, inviteUserButton, createHelpItemButton, viewHelpItemsButton,viewSpecialAccessButton , backupSpecialAccessButton);
+        VBox buttonGroup1 = new VBox(10, deleteUserButton, addRoleButton, removeRoleButton, logoutButton, backupButton, restoreButton);
+        VBox buttonGroup2 = new VBox(10, inviteUserButton, createHelpItemButton, viewHelpItemsButton,viewSpecialAccessButton , backupSpecialAccessButton, restoreSpecialAccessButton);
         buttonGroup1.setAlignment(Pos.TOP_CENTER);
         buttonGroup2.setAlignment(Pos.TOP_CENTER);
 
@@ -568,6 +623,8 @@ public class MyJavaFXApp extends Application {
 
         backupButton.setOnAction(e -> backupArticles());
         backupSpecialAccessButton.setOnAction((e -> backupSpecialAccessArticles()));
+        restoreButton.setOnAction(e -> restoreArticles());
+        restoreSpecialAccessButton.setOnAction(e -> restoreSpecialAccessArticles());
         // Delete user button, prompts user to confirm deleting user
         deleteUserButton.setOnAction(e -> {
             String selectedUser = userListView.getSelectionModel().getSelectedItem();
@@ -575,12 +632,12 @@ public class MyJavaFXApp extends Application {
                 Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "Are you sure you want to delete this user?", ButtonType.YES, ButtonType.NO);
                 alert.showAndWait().ifPresent(response -> {
                     if (response == ButtonType.YES) {
-                        try {
-                            dbUtil.deleteUserAccount(selectedUser);
-                            updateUserListView(userListView);
-                        } catch (SQLException ex) {
-                            ex.printStackTrace();
-                        }
+                        // The UserDeleted event takes the user out of the list
+                        asyncDb.deleteUserAccount(selectedUser).whenComplete((ignored, error) -> {
+                            if (error != null) {
+                                error.printStackTrace();
+                            }
+                        });
                     }
                 });
             }
@@ -594,14 +651,11 @@ public class MyJavaFXApp extends Application {
                 dialog.setTitle("Add Role");
                 dialog.setHeaderText("Add Role to User");
                 dialog.setContentText("Enter role:");
-                dialog.showAndWait().ifPresent(role -> {
-                    try {
-                        dbUtil.addRoleToUser(selectedUser, role);
-                        updateUserListView(userListView);
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
+                dialog.showAndWait().ifPresent(role -> asyncDb.addRoleToUser(selectedUser, role).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        error.printStackTrace();
                     }
-                });
+                }));
             }
         });
         // Remove role button, prompts user to enter a role to remove from the selected user
@@ -629,12 +683,11 @@ public class MyJavaFXApp extends Application {
 
                 dialog.showAndWait().ifPresent(role -> {
                     if (role != null) {
-                        try {
-                            dbUtil.removeRoleFromUser(selectedUser, role);
-                            updateUserListView(userListView);
-                        } catch (SQLException ex) {
-                            ex.printStackTrace();
-                        }
+                        asyncDb.removeRoleFromUser(selectedUser, role).whenComplete((ignored, error) -> {
+                            if (error != null) {
+                                error.printStackTrace();
+                            }
+                        });
                     }
                 });
             }
@@ -755,33 +808,29 @@ public class MyJavaFXApp extends Application {
 
             String shortDescription = descriptionField.getText().substring(0, Math.min(descriptionField.getText().length(), 50));
 
-            dialog.showAndWait().ifPresent(title -> {
-                try {
-                    dbUtil.addHelpItem(
-                            titleField.getText(),
-                            descriptionField.getText(),
-                            shortDescription,
-                            authorField.getText(),
-                            keywordsField.getText(),
-                            referencesField.getText(),
-                            levelField.getText(),
-                            categoryField.getText()
-
-                    );
-                } catch (Exception ex) {
-                    System.out.println("Error creating help item");
-                }
-            });
+            dialog.showAndWait().ifPresent(title -> asyncDb.addHelpItem(
+                    titleField.getText(),
+                    descriptionField.getText(),
+                    shortDescription,
+                    authorField.getText(),
+                    keywordsField.getText(),
+                    referencesField.getText(),
+                    levelField.getText(),
+                    categoryField.getText()
+            ).exceptionally(ex -> {
+                System.out.println("Error creating help item");
+                return null;
+            }));
         });
 
         // View help items button, prompts user to view all help items
         viewHelpItemsButton.setOnAction(e -> {
             // Go to the help items scene
             System.out.println("Viewing help items...");
-            primaryStage.setScene(helpItemsScene(primaryStage));
+            primaryStage.setScene(cachedScene("helpItems", () -> helpItemsScene(primaryStage)));
         });
         // Logout button, returns to the login scene
-        logoutButton.setOnAction(e -> primaryStage.setScene(createLoginScene(primaryStage)));
+        logoutButton.setOnAction(e -> primaryStage.setScene(logOut(primaryStage)));
         // Set scene and stylesheet
         Scene adminScene = new Scene(adminGrid, WINDOW_HEIGHT, WINDOW_WIDTH);
         adminScene.getStylesheets().add(Objects.requireNonNull(getClass().getResource("adminScene.css")).toExternalForm());
@@ -791,15 +840,27 @@ public class MyJavaFXApp extends Application {
 
     // Update the user list view
     private void updateUserListView(ListView<String> userListView) {
-        try {
-            List<User> users = dbUtil.listUserAccounts();
+        asyncDb.listUserAccounts().whenComplete((users, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                return;
+            }
             userListView.getItems().clear();
             for (User user : users) {
                 userListView.getItems().add(user.getUsername());
             }
-        } catch (SQLException ex) {
-            ex.printStackTrace();
-        }
+        });
+    }
+
+    // Keep the user list view up to date one row at a time instead of loading the whole list again
+    private void watchUserListView(ListView<String> userListView) {
+        subscribe(DatabaseEvent.UserAdded.class, event -> {
+            if (!userListView.getItems().contains(event.username)) {
+                userListView.getItems().add(event.username);
+            }
+        });
+        subscribe(DatabaseEvent.UserDeleted.class, event -> userListView.getItems().remove(event.username));
+        subscribe(DatabaseEvent.UsersReset.class, event -> updateUserListView(userListView));
     }
 
     /**********
@@ -821,14 +882,14 @@ public class MyJavaFXApp extends Application {
         studentSceneGrid.add(backToLoginButton, 0, 1);
 
         // Back to login button, returns to the login scene
-        backToLoginButton.setOnAction(e -> primaryStage.setScene(createLoginScene(primaryStage)));
+        backToLoginButton.setOnAction(e -> primaryStage.setScene(logOut(primaryStage)));
         // Create view help items button
         Button viewHelpItemsButton = new Button("View Help Items");
         studentSceneGrid.add(viewHelpItemsButton, 1, 1);
         // View help items button, prompts user to view all help items
         viewHelpItemsButton.setOnAction(e -> {
             System.out.println("Viewing help items...");
-            primaryStage.setScene(helpItemsScene(primaryStage));
+            primaryStage.setScene(cachedScene("helpItems", () -> helpItemsScene(primaryStage)));
         });
         // Create a send help message button
         Button sendHelpMessageButton = new Button("Send Help Message");
@@ -902,6 +963,7 @@ public class MyJavaFXApp extends Application {
         // User List View
         ListView<String> userListView = new ListView<>();
         updateUserListView(userListView);
+        watchUserListView(userListView);
         userListView.setPrefHeight(200);
         instructorGrid.add(userListView, 0, 1, 2, 1);
 
@@ -913,20 +975,22 @@ public class MyJavaFXApp extends Application {
         Button logoutButton = new Button("Log Out");
         Button backupButton = new Button("Backup Articles");
         backupButton.setOnAction(e -> backupArticles());
+        Button restoreButton = new Button("Restore Articles");
+        restoreButton.setOnAction(e -> restoreArticles());
 
         createHelpItemButton.setPrefWidth(150);
         viewHelpItemsButton.setPrefWidth(150);
         logoutButton.setPrefWidth(150);
 
-        VBox buttonGroup = new VBox(10, createHelpItemButton, viewHelpItemsButton, viewSpecialAccessButton, createSpecialAccessButton ,logoutButton, backupButton);
+        VBox buttonGroup = new VBox(10, createHelpItemButton, viewHelpItemsButton, viewSpecialAccessButton, createSpecialAccessButton ,logoutButton, backupButton, restoreButton);
         instructorGrid.add(buttonGroup, 0, 2, 2, 1); // Corrected to span only 2 columns
 
         // Logout button action
-        logoutButton.setOnAction(e -> primaryStage.setScene(createLoginScene(primaryStage)));
+        logoutButton.setOnAction(e -> primaryStage.setScene(logOut(primaryStage)));
         viewHelpItemsButton.setOnAction(e -> {
             // Go to the help items scene
             System.out.println("Viewing help items...");
-            primaryStage.setScene(helpItemsScene(primaryStage));
+            primaryStage.setScene(cachedScene("helpItems", () -> helpItemsScene(primaryStage)));
         });
 
         // Create help item button, prompts user to create a help item
@@ -995,22 +1059,19 @@ public class MyJavaFXApp extends Application {
 
             String shortDescription = descriptionField.getText().substring(0, Math.min(descriptionField.getText().length(), 50));
 
-            dialog.showAndWait().ifPresent(title -> {
-                try {
-                    dbUtil.addHelpItem(
-                            titleField.getText(),
-                            descriptionField.getText(),
-                            shortDescription,
-                            authorField.getText(),
-                            keywordsField.getText(),
-                            referencesField.getText(),
-                            levelField.getText(),
-                            categoryField.getText()
-                    );
-                } catch (Exception ex) {
-                    System.out.println("Error creating help item");
-                }
-            });
+            dialog.showAndWait().ifPresent(title -> asyncDb.addHelpItem(
+                    titleField.getText(),
+                    descriptionField.getText(),
+                    shortDescription,
+                    authorField.getText(),
+                    keywordsField.getText(),
+                    referencesField.getText(),
+                    levelField.getText(),
+                    categoryField.getText()
+            ).exceptionally(ex -> {
+                System.out.println("Error creating help item");
+                return null;
+            }));
         });
 
         Scene instructorScene = new Scene(instructorGrid, WINDOW_HEIGHT, WINDOW_WIDTH);
@@ -1063,16 +1124,18 @@ public class MyJavaFXApp extends Application {
             if (email.isEmpty() || firstName.isEmpty() || lastName.isEmpty()) {
                 System.out.println("Email, First Name, and Last Name cannot be empty!");
             } else {
-                try {
+                finishSetupButton.setDisable(true);
+                asyncDb.updateUserDetails(username, email, firstName, middleName, lastName, preferredFirstName).whenComplete((ignored, error) -> {
+                    finishSetupButton.setDisable(false);
+                    if (error != null) {
+                        error.printStackTrace();
+                        return;
+                    }
                     System.out.println("User Registration Completed!");
 
-                    dbUtil.updateUserDetails(username, email, firstName, middleName, lastName, preferredFirstName);
-
                     /* NEEDS WORK - navigating to either instructor, admin, or student*/
-                    primaryStage.setScene(studentScene(primaryStage));
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
+                    primaryStage.setScene(cachedScene("student", () -> studentScene(primaryStage)));
+                });
             }
         });
         // Return the scene
@@ -1107,9 +1170,9 @@ public class MyJavaFXApp extends Application {
         TextField groupBox = new TextField();
         groupBox.setPromptText("Filter by assignment group");
 
-        // Create a dropdown box right under the search box, to filter by Title, Author or abstract
+        // Create a dropdown box right under the search box, to filter by Title, Author or abstract, or rank by every field
         ComboBox<String> filterComboBox = new ComboBox<>();
-        filterComboBox.getItems().addAll("Title", "Author", "Abstract");
+        filterComboBox.getItems().addAll("Title", "Author", "Abstract", "Full Text");
         filterComboBox.setPromptText("Title");
         ComboBox<String> filterLevelBox = new ComboBox<>();
         filterLevelBox.getItems().addAll("Beginner", "Intermediate", "Advanced", "Expert", "All Levels");
@@ -1118,38 +1181,90 @@ public class MyJavaFXApp extends Application {
         // ListView for displaying help items
         ListView<String> helpItemsListView = new ListView<>();
 
-        // Load help items into an observable list
-        ObservableList<String> helpItemsList = FXCollections.observableArrayList();
-        try {
-            List<helpItem> helpItems = dbUtil.getAllHelpItems();
-            for (helpItem item : helpItems) {
-                helpItemsList.add(item.getTitle());
+        // Titles are fetched a page at a time as the list scrolls, only the pages on screen stay loaded
+        HelpItemListModel helpItemsList = new HelpItemListModel(asyncDb);
+        helpItemsListView.setItems(helpItemsList);
+        helpItemsListView.setPlaceholder(new Label("Loading help items..."));
+        helpItemsList.reload(null).whenComplete((loaded, error) -> {
+            helpItemsListView.setPlaceholder(new Label("No help items"));
+            if (error != null) {
+                error.printStackTrace();
             }
-        } catch (SQLException ex) {
-            ex.printStackTrace();
-        }
-
-        // Wrap the helpItemsList with a FilteredList for search functionality
-        FilteredList<String> filteredHelpItems = new FilteredList<>(helpItemsList, s -> true);
-        helpItemsListView.setItems(filteredHelpItems);
+        });
+        // An edited help item only changes its own row, added or deleted ones change the page index
+        subscribe(DatabaseEvent.HelpItemUpdated.class, event -> helpItemsList.update(event.item));
+        subscribe(DatabaseEvent.HelpItemAdded.class, event -> helpItemsList.reload());
+        subscribe(DatabaseEvent.HelpItemDeleted.class, event -> helpItemsList.reload());
+        subscribe(DatabaseEvent.HelpItemsReplaced.class, event -> helpItemsList.reload());
+        // Build the search index now, on a worker thread, so the first search does not wait for it
+        asyncDb.search(HelpItemSearchIndex::size);
+
+        // A title search runs in the database, so wait for a pause in typing instead of querying every keystroke
+        PauseTransition titleSearchDelay = new PauseTransition(Duration.millis(250));
+        titleSearchDelay.setOnFinished(e -> {
+            String query = searchBox.getText();
+            helpItemsList.reload(query).thenRun(() -> {
+                if (!helpItemsList.isEmpty() || !query.equals(searchBox.getText())) {
+                    return;
+                }
+                // No title contains the text as typed, show the titles and keywords it is probably a misspelling of
+                asyncDb.search(index -> index.fuzzyTitles(query, FULL_TEXT_RESULTS)).whenComplete((similar, error) -> {
+                    if (error != null) {
+                        error.printStackTrace();
+                        return;
+                    }
+                    if (!similar.isEmpty() && query.equals(searchBox.getText()) && helpItemsList.isEmpty()) {
+                        helpItemsListView.setItems(FXCollections.observableArrayList(similar));
+                    }
+                });
+            });
+        });
 
         // Update filter whenever the search box text changes
         searchBox.textProperty().addListener((observable, oldValue, newValue) -> {
-            filteredHelpItems.setPredicate(title -> {
-                if (newValue == null || newValue.isEmpty()) {
-                    return true;
+            titleSearchDelay.stop();
+            if (newValue == null || newValue.isEmpty()) {
+                helpItemsListView.setItems(helpItemsList);
+                helpItemsList.reload(null);
+                return;
+            }
+            if (filterComboBox.getValue() == null || filterComboBox.getValue().equals("Title")) {
+                helpItemsListView.setItems(helpItemsList);
+                titleSearchDelay.playFromStart(); // Filter based on title, in the database
+                return;
+            }
+            // Author, abstract, full text and group filters are answered by the search index, off the FX thread
+            String filter = filterComboBox.getValue();
+            String group = groupBox.getText();
+            asyncDb.search(searchIndex -> {
+                if (filter.equals("Full Text")) {
+                    // Best matches over title, keywords, abstract and body first
+                    List<String> ranked = new ArrayList<>();
+                    for (HelpItemSearchIndex.Hit hit : searchIndex.rank(newValue, FULL_TEXT_RESULTS).hits) {
+                        ranked.add(hit.title);
+                    }
+                    return ranked;
                 }
-                String lowerCaseFilter = newValue.toLowerCase();
-                if (filterComboBox.getValue() == null || filterComboBox.getValue().equals("Title")) {
-                    return title.toLowerCase().contains(lowerCaseFilter); // Filter based on title
-                } else if (filterComboBox.getValue().equals("Author")) {
-                    return dbUtil.getHelpItem(title).getAuthors().toLowerCase().contains(lowerCaseFilter); // Filter based on author
-                } else if (filterComboBox.getValue().equals("Abstract")) {
-                    return dbUtil.getHelpItem(title).getShortDescription().toLowerCase().contains(lowerCaseFilter); // Filter based on abstract
-                } else if (!groupBox.getText().isEmpty()){
-                    return dbUtil.getHelpItem(title).getGroup().toLowerCase().contains(groupBox.getText().toLowerCase());
+                Set<String> matches;
+                if (filter.equals("Author")) {
+                    matches = new HashSet<>(searchIndex.searchTitles(newValue, HelpItemSearchIndex.Field.AUTHORS)); // Filter based on author
+                } else if (filter.equals("Abstract")) {
+                    matches = new HashSet<>(searchIndex.searchTitles(newValue, HelpItemSearchIndex.Field.SHORT_DESCRIPTION)); // Filter based on abstract
+                } else if (!group.isEmpty()) {
+                    matches = new HashSet<>(searchIndex.searchTitles(group, HelpItemSearchIndex.Field.GROUP));
+                } else {
+                    matches = new HashSet<>();
+                }
+                return new ArrayList<>(matches);
+            }).whenComplete((titles, error) -> {
+                if (error != null) {
+                    error.printStackTrace();
+                    return;
+                }
+                // Typing went on while this ran, a newer search will show its own results
+                if (newValue.equals(searchBox.getText())) {
+                    helpItemsListView.setItems(FXCollections.observableArrayList(titles));
                 }
-                return false;
             });
         });
 
@@ -1219,15 +1334,20 @@ public class MyJavaFXApp extends Application {
         // ListView selection listener for displaying details
         helpItemsListView.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue != null) {
-                helpItem selectedHelpItem = dbUtil.getHelpItem(newValue);
-                itemID.setText(String.valueOf(selectedHelpItem.getId())); // Display ID
-                titleField.setText(selectedHelpItem.getTitle());
-                descriptionField.setText(selectedHelpItem.getDescription());
-                authorsField.setText(selectedHelpItem.getAuthors());
-                keywordsField.setText(selectedHelpItem.getKeywords());
-                referencesField.setText(selectedHelpItem.getReferences());
-                levelField.setText(selectedHelpItem.getLevel());
-                groupField.setText(selectedHelpItem.getGroup());
+                asyncDb.getHelpItem(newValue).thenAccept(selectedHelpItem -> {
+                    // Skip items that are gone, or that were loaded after the user already picked another one
+                    if (selectedHelpItem == null || !newValue.equals(helpItemsListView.getSelectionModel().getSelectedItem())) {
+                        return;
+                    }
+                    itemID.setText(String.valueOf(selectedHelpItem.getId())); // Display ID
+                    titleField.setText(selectedHelpItem.getTitle());
+                    descriptionField.setText(selectedHelpItem.getDescription());
+                    authorsField.setText(selectedHelpItem.getAuthors());
+                    keywordsField.setText(selectedHelpItem.getKeywords());
+                    referencesField.setText(selectedHelpItem.getReferences());
+                    levelField.setText(selectedHelpItem.getLevel());
+                    groupField.setText(selectedHelpItem.getGroup());
+                });
             }
         });
 
@@ -1248,26 +1368,27 @@ public class MyJavaFXApp extends Application {
                         groupField.getText()
 
                 );
-                try {
-                    dbUtil.updateHelpItem(Integer.parseInt(itemID.getText()), updatedItem); // Update by ID
-                    helpItemsListView.getItems().set(
-                            helpItemsListView.getSelectionModel().getSelectedIndex(),
-                            updatedItem.getTitle()
-                    );
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
+                int selectedIndex = helpItemsListView.getSelectionModel().getSelectedIndex();
+                saveButton.setDisable(true);
+                asyncDb.updateHelpItem(Integer.parseInt(itemID.getText()), updatedItem).whenComplete((ignored, error) -> { // Update by ID
+                    saveButton.setDisable(false);
+                    if (error != null) {
+                        error.printStackTrace();
+                        return;
+                    }
+                    helpItemsListView.getItems().set(selectedIndex, updatedItem.getTitle());
+                });
             }
         });
 
-        backToLoginButton.setOnAction(e -> primaryStage.setScene(createLoginScene(primaryStage)));
+        backToLoginButton.setOnAction(e -> primaryStage.setScene(logOut(primaryStage)));
         backToDashboard.setOnAction(e -> {
             if (currentUser.equals("admin")) {
-                primaryStage.setScene(adminScene(primaryStage));
+                primaryStage.setScene(cachedScene("admin", () -> adminScene(primaryStage)));
             } else if (currentUser.equals("instructor")) {
-                primaryStage.setScene(instructorScene(primaryStage));
+                primaryStage.setScene(cachedScene("instructor", () -> instructorScene(primaryStage)));
             } else {
-                primaryStage.setScene(studentScene(primaryStage));
+                primaryStage.setScene(cachedScene("student", () -> studentScene(primaryStage)));
             }
         });
 
@@ -1291,12 +1412,15 @@ public class MyJavaFXApp extends Application {
         dialog.setContentText("File Name:");
 
         dialog.showAndWait().ifPresent(fileName -> {
-            try {
-                dbUtil.backupHelpItemsToFile(fileName.trim());
-                showAlert("Success", "Articles backed up to " + fileName);
-            } catch (Exception e) {
-                showAlert("Error", "Failed to backup articles: " + e.getMessage());
-            }
+            ProgressWindow progress = new ProgressWindow("Backing up articles...");
+            asyncDb.backupHelpItemsToFile(fileName.trim(), progress).whenComplete((stats, error) -> {
+                progress.close();
+                if (error == null) {
+                    showAlert("Success", "Articles backed up to " + fileName);
+                } else {
+                    showAlert("Error", "Failed to backup articles: " + error.getMessage());
+                }
+            });
         });
     }
 
@@ -1307,15 +1431,96 @@ public class MyJavaFXApp extends Application {
         dialog.setContentText("File Name:");
 
         dialog.showAndWait().ifPresent(fileName -> {
-            try {
-                dbUtil.backupSpecialAccessItemsToFile(fileName.trim());
-                showAlert("Success", "Articles backed up to " + fileName);
-            } catch (Exception e) {
-                showAlert("Error", "Failed to backup articles: " + e.getMessage());
-            }
+            ProgressWindow progress = new ProgressWindow("Backing up special access articles...");
+            asyncDb.backupSpecialAccessItemsToFile(fileName.trim(), progress).whenComplete((stats, error) -> {
+                progress.close();
+                if (error == null) {
+                    showAlert("Success", "Articles backed up to " + fileName);
+                } else {
+                    showAlert("Error", "Failed to backup articles: " + error.getMessage());
+                }
+            });
         });
     }
 
+    /* Load a backed up set of articles, replacing the current set or merging into it */
+    private void restoreArticles() {
+        askRestoreFile("Restore Articles").ifPresent(fileName ->
+                askRestoreMode().ifPresent(mode -> {
+                    ProgressWindow progress = new ProgressWindow("Restoring articles...");
+                    asyncDb.restoreHelpItemsFromFile(fileName, mode, progress).whenComplete((result, error) -> {
+                        progress.close();
+                        if (error == null) {
+                            showAlert("Success", "Articles restored from " + fileName + ": " + result);
+                        } else {
+                            showAlert("Error", "Failed to restore articles: " + error.getMessage());
+                        }
+                    });
+                }));
+    }
+
+    private void restoreSpecialAccessArticles() {
+        askRestoreFile("Restore Special Access Articles").ifPresent(fileName ->
+                askRestoreMode().ifPresent(mode -> {
+                    ProgressWindow progress = new ProgressWindow("Restoring special access articles...");
+                    asyncDb.restoreSpecialAccessItemsFromFile(fileName, mode, progress).whenComplete((result, error) -> {
+                        progress.close();
+                        if (error == null) {
+                            showAlert("Success", "Articles restored from " + fileName + ": " + result);
+                        } else {
+                            showAlert("Error", "Failed to restore articles: " + error.getMessage());
+                        }
+                    });
+                }));
+    }
+
+    private java.util.Optional<String> askRestoreFile(String title) {
+        TextInputDialog dialog = new TextInputDialog("backup.csv");
+        dialog.setTitle(title);
+        dialog.setHeaderText("Enter the file name of the backup to restore:");
+        dialog.setContentText("File Name:");
+        return dialog.showAndWait().map(String::trim);
+    }
+
+    private java.util.Optional<DatabaseUtil.RestoreMode> askRestoreMode() {
+        ChoiceDialog<String> dialog = new ChoiceDialog<>("Replace", "Replace", "Merge");
+        dialog.setTitle("Restore Mode");
+        dialog.setHeaderText("Replace empties the current articles first, Merge keeps them and skips duplicates.");
+        dialog.setContentText("Mode:");
+        return dialog.showAndWait().map(choice -> choice.equals("Merge") ? DatabaseUtil.RestoreMode.MERGE : DatabaseUtil.RestoreMode.REPLACE);
+    }
+
+    /* Small window with a progress bar, shown while a backup or restore runs in the background */
+    private static class ProgressWindow implements DatabaseUtil.ProgressListener {
+        private final Stage stage = new Stage();
+        private final ProgressBar bar = new ProgressBar(ProgressBar.INDETERMINATE_PROGRESS);
+        private final Label status = new Label();
+
+        ProgressWindow(String title) {
+            bar.setPrefWidth(300);
+            VBox box = new VBox(10, new Label(title), bar, status);
+            box.setPadding(new Insets(20));
+            stage.setTitle(title);
+            stage.setScene(new Scene(box));
+            stage.show();
+        }
+
+        /* Called on the JavaFX Application Thread through AsyncDatabaseUtil */
+        @Override
+        public void onProgress(long done, long total) {
+            if (total > 0) {
+                bar.setProgress((double) done / total);
+                status.setText(String.format("%.0f%%", 100.0 * done / total));
+            } else {
+                status.setText(done + " rows");
+            }
+        }
+
+        void close() {
+            stage.close();
+        }
+    }
+
     private void showAlert(String title, String message) {
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle(title);
@@ -1331,7 +1536,17 @@ public class MyJavaFXApp extends Application {
      * @param args This parameter holds the command line parameters.
      *
      */
-    public static void main(String[] args) {
+    /* Pass --server to run the HTTP API instead of the window, see HelpSystemServer for its options */
+    public static void main(String[] args) throws Exception {
+        if (java.util.Arrays.asList(args).contains("--server")) {
+            HelpSystemServer.main(args);
+            return;
+        }
         launch(args);
     }
+
+    @Override
+    public void stop() {
+        asyncDb.close();
+    }
 }
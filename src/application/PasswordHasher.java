@@ -0,0 +1,247 @@
+package application;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * <p> PasswordHasher </p>
+ *
+ * <p> Description: Hashes passwords with PBKDF2-HMAC-SHA256 and a random salt, and checks them
+ * against stored hashes. A hash is stored as pbkdf2-sha256$iterations$salt$hash, so the cost it was
+ * made with travels with it and needsRehash can tell when it is older than the current setting.
+ * Every hash runs on a small pool of its own, one thread per core by default, behind a bounded
+ * queue: a burst of logins waits its turn instead of starving the database threads of CPU, and once
+ * the queue is full further logins are rejected with an OverloadedException at once. getStats
+ * reports how many were queued, how long they waited and how many were rejected. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class PasswordHasher implements AutoCloseable {
+    // OWASP's 2021 figure for PBKDF2-HMAC-SHA256, about a tenth of a second per login on a laptop core
+    public static final int DEFAULT_ITERATIONS = 310_000;
+    // Hashes waiting for a thread before new ones are rejected
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /* Thrown when the queue is full; the caller should try again a little later */
+    public static class OverloadedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        OverloadedException(String message) {
+            super(message);
+        }
+    }
+
+    /* Counters since the hasher was created */
+    public static class Stats {
+        public final long hashes;
+        public final long verifications;
+        public final long rejections;
+        public final int queued;
+        public final int active;
+        public final long queueWaitNanos;
+        public final long workNanos;
+
+        Stats(long hashes, long verifications, long rejections, int queued, int active, long queueWaitNanos, long workNanos) {
+            this.hashes = hashes;
+            this.verifications = verifications;
+            this.rejections = rejections;
+            this.queued = queued;
+            this.active = active;
+            this.queueWaitNanos = queueWaitNanos;
+            this.workNanos = workNanos;
+        }
+
+        public double getAverageQueueWaitMillis() {
+            long runs = hashes + verifications;
+            return runs == 0 ? 0 : queueWaitNanos / 1_000_000.0 / runs;
+        }
+
+        public double getAverageWorkMillis() {
+            long runs = hashes + verifications;
+            return runs == 0 ? 0 : workNanos / 1_000_000.0 / runs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hashes, %d verifications, %d rejected, %d queued, %d running, %.1f ms average wait, %.1f ms average work",
+                    hashes, verifications, rejections, queued, active, getAverageQueueWaitMillis(), getAverageWorkMillis());
+        }
+    }
+
+    private final int iterations;
+    private final ThreadPoolExecutor pool;
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder verifications = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder workNanos = new LongAdder();
+    // Made on first use; checked against when a username does not exist
+    private volatile String dummyHash;
+
+    public PasswordHasher() {
+        this(DEFAULT_ITERATIONS, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public PasswordHasher(int iterations, int threads, int queueCapacity) {
+        if (iterations < 1 || threads < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("iterations and threads must be positive, queueCapacity not negative");
+        }
+        this.iterations = iterations;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /* Hash a password with a new salt and the current iterations */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = run(hashes, () -> derive(password, salt, iterations));
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + iterations + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(hash);
+    }
+
+    /**
+     * Check a password against what is stored for the user: a hash made by this class, with any
+     * iterations, or a plain text password stored before passwords were hashed.
+     */
+    public boolean verify(String password, String stored) {
+        if (stored == null || password == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        int storedIterations;
+        byte[] salt;
+        byte[] expected;
+        try {
+            storedIterations = Integer.parseInt(parts[1]);
+            salt = Base64.getDecoder().decode(parts[2]);
+            expected = Base64.getDecoder().decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        byte[] actual = run(verifications, () -> derive(password, salt, storedIterations));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * Spend the time checking a wrong password takes, for a user that does not exist, so the time a
+     * login takes does not tell whether a username is taken.
+     */
+    public void verifyDummy(String password) {
+        String hash = dummyHash;
+        if (hash == null) {
+            dummyHash = hash = hash("dummy password");
+        }
+        verify(password, hash);
+    }
+
+    /* Whether a stored password is plain text or hashed with other iterations than the current ones */
+    public boolean needsRehash(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        return parts.length != 4 || !parts[1].equals(Integer.toString(iterations));
+    }
+
+    /* Whether a stored password was hashed by this class, rather than stored in plain text */
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX + "$");
+    }
+
+    public Stats getStats() {
+        return new Stats(hashes.sum(), verifications.sum(), rejections.sum(), pool.getQueue().size(), pool.getActiveCount(),
+                queueWaitNanos.sum(), workNanos.sum());
+    }
+
+    /* Run a hash on the pool and wait for it */
+    private byte[] run(LongAdder counter, Callable<byte[]> work) {
+        long submitted = System.nanoTime();
+        Future<byte[]> result;
+        try {
+            result = pool.submit(() -> {
+                long started = System.nanoTime();
+                queueWaitNanos.add(started - submitted);
+                try {
+                    return work.call();
+                } finally {
+                    workNanos.add(System.nanoTime() - started);
+                    counter.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            throw new OverloadedException("Too many password checks waiting, try again shortly");
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking a password", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /* Stop the threads; hashes already queued still finish */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
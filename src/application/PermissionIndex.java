@@ -0,0 +1,154 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p> PermissionIndex </p>
+ *
+ * <p> Description: In-memory copy of the group_permissions table, loaded one user at a time the
+ * first time that user's permissions are checked. Each user has a bitset of group ids per permission
+ * type, so a check is a single bit lookup. The bitsets are never changed once published; a grant or
+ * revoke replaces them, which lets checks run without locking. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class PermissionIndex {
+
+    /* Permission types stored in group_permissions.permission_type */
+    public enum Permission {
+        VIEW, ADMIN;
+
+        /* The permission for a permission_type value, or null if it is not one of ours */
+        static Permission of(String permissionType) {
+            for (Permission permission : values()) {
+                if (permission.name().equals(permissionType)) {
+                    return permission;
+                }
+            }
+            return null;
+        }
+    }
+
+    /* The groups a user holds each permission in */
+    public static class UserPermissions {
+        private final BitSet[] groups;
+
+        UserPermissions(BitSet[] groups) {
+            this.groups = groups;
+        }
+
+        public boolean has(Permission permission, int groupId) {
+            return groupId >= 0 && groups[permission.ordinal()].get(groupId);
+        }
+
+        /* Ids of the groups the user holds the permission in, in ascending order */
+        public List<Integer> groupIds(Permission permission) {
+            BitSet set = groups[permission.ordinal()];
+            List<Integer> ids = new ArrayList<>(set.cardinality());
+            for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+                ids.add(id);
+            }
+            return ids;
+        }
+    }
+
+    private final Map<String, UserPermissions> users = new ConcurrentHashMap<>();
+    // Bumped on every change, so a load that raced with one is not kept
+    private long generation = 0;
+
+    /* The loaded permissions of a user, or null if the user has not been loaded yet */
+    public UserPermissions get(String username) {
+        return users.get(username);
+    }
+
+    /* Current generation, read before loading a user from the database */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /* Bitsets to fill while loading a user, one per permission type */
+    public static BitSet[] newGroupSets() {
+        BitSet[] groups = new BitSet[Permission.values().length];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = new BitSet();
+        }
+        return groups;
+    }
+
+    /* Keep a user loaded at the given generation, unless the permissions changed meanwhile */
+    public synchronized UserPermissions put(String username, BitSet[] groups, long loadedAt) {
+        UserPermissions loaded = new UserPermissions(groups);
+        if (loadedAt == generation) {
+            users.put(username, loaded);
+        }
+        return loaded;
+    }
+
+    /* Record a permission that was just inserted */
+    public synchronized void grant(String username, int groupId, String permissionType) {
+        update(username, groupId, permissionType, true);
+    }
+
+    /* Record a permission that was just deleted */
+    public synchronized void revoke(String username, int groupId, String permissionType) {
+        update(username, groupId, permissionType, false);
+    }
+
+    /* Drop a deleted group from every loaded user */
+    public synchronized void removeGroup(int groupId) {
+        generation++;
+        if (groupId < 0) {
+            return;
+        }
+        for (Map.Entry<String, UserPermissions> entry : users.entrySet()) {
+            BitSet[] groups = entry.getValue().groups;
+            for (BitSet set : groups) {
+                if (set.get(groupId)) {
+                    entry.setValue(new UserPermissions(copyWithout(groups, groupId)));
+                    break;
+                }
+            }
+        }
+    }
+
+    /* Forget everything, users are loaded again on their next check */
+    public synchronized void clear() {
+        generation++;
+        users.clear();
+    }
+
+    private void update(String username, int groupId, String permissionType, boolean granted) {
+        generation++;
+        UserPermissions current = users.get(username);
+        if (current == null) {
+            return;
+        }
+        Permission permission = Permission.of(permissionType);
+        if (permission == null || groupId < 0) {
+            // Not something the index tracks exactly, load the user again next time
+            users.remove(username);
+            return;
+        }
+        BitSet[] groups = current.groups.clone();
+        groups[permission.ordinal()] = (BitSet) groups[permission.ordinal()].clone();
+        groups[permission.ordinal()].set(groupId, granted);
+        users.put(username, new UserPermissions(groups));
+    }
+
+    private static BitSet[] copyWithout(BitSet[] groups, int groupId) {
+        BitSet[] copy = new BitSet[groups.length];
+        for (int i = 0; i < groups.length; i++) {
+            copy[i] = (BitSet) groups[i].clone();
+            copy[i].clear(groupId);
+        }
+        return copy;
+    }
+}
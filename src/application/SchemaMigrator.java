@@ -0,0 +1,148 @@
+package application;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p> SchemaMigrator </p>
+ *
+ * <p> Description: Brings the database schema up to date with an ordered list of migrations. The
+ * schema_version table holds one row per migration applied, so on a start where the schema is
+ * already current the only statement run is the query for its highest version, and no DDL at all.
+ * Each migration is recorded right after it succeeds; DDL commits on its own in H2, so a migration
+ * that fails halfway is run again from its start next time, which is why every step must be safe
+ * to run twice (IF NOT EXISTS, and data conversions that skip converted rows). A released migration
+ * is never edited, a change to the schema is always a new one at the end of the list. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class SchemaMigrator {
+    // H2 error codes for a table that does not exist: plain, with similar names, in an empty database
+    private static final int[] TABLE_NOT_FOUND = {42102, 42103, 42104};
+
+    /* One step of a migration; runs on connections borrowed from the pool as usual */
+    public interface Step {
+        void apply() throws SQLException;
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    /* What migrate did */
+    public static class Result {
+        public final int fromVersion;
+        public final int toVersion;
+        public final List<String> applied;
+        public final long elapsedNanos;
+
+        Result(int fromVersion, int toVersion, List<String> applied, long elapsedNanos) {
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+            this.applied = applied;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return applied.isEmpty()
+                    ? String.format("schema at version %d, checked in %.1f ms", toVersion, elapsedNanos / 1_000_000.0)
+                    : String.format("schema migrated from version %d to %d in %.1f ms", fromVersion, toVersion, elapsedNanos / 1_000_000.0);
+        }
+    }
+
+    private final ConnectionSource connections;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    public SchemaMigrator(ConnectionSource connections) {
+        this.connections = connections;
+    }
+
+    /* Add the next migration; versions start at 1 and go up by one */
+    public SchemaMigrator add(int version, String description, Step step) {
+        if (version != getLatestVersion() + 1) {
+            throw new IllegalArgumentException("Migration " + version + " should be " + (getLatestVersion() + 1));
+        }
+        migrations.add(new Migration(version, description, step));
+        return this;
+    }
+
+    /* The version the migrations bring the schema to */
+    public int getLatestVersion() {
+        return migrations.size();
+    }
+
+    /* The version of the schema in the database, 0 for a database from before schema versioning */
+    public int getCurrentVersion() throws SQLException {
+        try (Connection conn = connections.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            for (int code : TABLE_NOT_FOUND) {
+                if (e.getErrorCode() == code) {
+                    return 0;
+                }
+            }
+            throw e;
+        }
+    }
+
+    /* Apply the migrations the database does not have yet, in order */
+    public Result migrate() throws SQLException {
+        long start = System.nanoTime();
+        int current = getCurrentVersion();
+        int latest = getLatestVersion();
+        if (current > latest) {
+            throw new SQLException("The database schema is at version " + current
+                    + ", newer than version " + latest + " this application knows");
+        }
+        if (current == latest) {
+            return new Result(current, current, Collections.emptyList(), System.nanoTime() - start);
+        }
+        if (current == 0) {
+            try (Connection conn = connections.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                        + "version INT PRIMARY KEY, "
+                        + "description VARCHAR(255), "
+                        + "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                        + "duration_ms BIGINT)");
+            }
+        }
+        List<String> applied = new ArrayList<>();
+        for (Migration migration : migrations.subList(current, latest)) {
+            long stepStart = System.nanoTime();
+            migration.step.apply();
+            long millis = (System.nanoTime() - stepStart) / 1_000_000;
+            try (Connection conn = connections.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(
+                         "INSERT INTO schema_version (version, description, duration_ms) VALUES (?, ?, ?)")) {
+                pstmt.setInt(1, migration.version);
+                pstmt.setString(2, migration.description);
+                pstmt.setLong(3, millis);
+                pstmt.executeUpdate();
+            }
+            applied.add(migration.version + ": " + migration.description + " (" + millis + " ms)");
+        }
+        return new Result(current, latest, applied, System.nanoTime() - start);
+    }
+}
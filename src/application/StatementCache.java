@@ -0,0 +1,157 @@
+package application;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p> StatementCache </p>
+ *
+ * <p> Description: LRU cache of prepared statements for one pooled connection, keyed by SQL text.
+ * Statements handed out by the cache are not closed by close(), their parameters are cleared and
+ * they go back into the cache, so the SQL is parsed and planned only once per connection. </p>
+ *
+ * <p> Copyright: Lynn Robert Carter © 2024 </p>
+ *
+ * @author Luan Nguyen, Smit Devrukhkar, Gabriel Clark, Meadow Kubanski, Isabella Paschal
+ * @version 1.00
+ */
+
+public class StatementCache {
+    private final Connection connection;
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    // Access ordered, so the eldest entry is the least recently used statement
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    /* A prepared statement owned by the cache */
+    private class CachedStatement implements InvocationHandler {
+        final String key;
+        final PreparedStatement statement;
+        final PreparedStatement proxy;
+        boolean inUse = false;
+        boolean evicted = false;
+
+        CachedStatement(String key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    giveBack(this);
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                default:
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    public StatementCache(Connection connection, int maxSize, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                retire(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /* Get a prepared statement for the SQL, reusing the cached one when it is free */
+    public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        if (maxSize <= 0) {
+            misses.increment();
+            return connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+        String key = autoGeneratedKeys + ":" + sql;
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            hits.increment();
+            cached.inUse = true;
+            return cached.proxy;
+        }
+        misses.increment();
+        PreparedStatement statement = connection.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // Same SQL already running further up the call stack, use a throwaway statement
+            return statement;
+        }
+        cached = new CachedStatement(key, statement);
+        cached.inUse = true;
+        statements.put(key, cached);
+        return cached.proxy;
+    }
+
+    /* Number of cached statements */
+    public int size() {
+        return statements.size();
+    }
+
+    /* Close every cached statement */
+    public void close() {
+        List<CachedStatement> all = new ArrayList<>(statements.values());
+        statements.clear();
+        for (CachedStatement cached : all) {
+            closeQuietly(cached.statement);
+        }
+    }
+
+    private void giveBack(CachedStatement cached) throws SQLException {
+        if (!cached.inUse) {
+            return;
+        }
+        cached.inUse = false;
+        if (cached.evicted) {
+            closeQuietly(cached.statement);
+        } else {
+            cached.statement.clearParameters();
+            cached.statement.clearBatch();
+        }
+    }
+
+    private void retire(CachedStatement cached) {
+        evictions.increment();
+        cached.evicted = true;
+        if (!cached.inUse) {
+            closeQuietly(cached.statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
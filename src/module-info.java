@@ -3,6 +3,8 @@ module CSE360_BinaryBabes {
     requires com.h2database;
     requires org.bouncycastle.provider;
     requires java.sql;
+    requires jdk.httpserver;
+    requires java.management;
     requires org.junit.jupiter.api;
     requires junit;
 